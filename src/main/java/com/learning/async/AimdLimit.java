@@ -0,0 +1,35 @@
+package com.learning.async;
+
+/**
+ * @see LimitAlgorithm#aimd(int, int, double, long, java.util.concurrent.TimeUnit)
+ */
+final class AimdLimit implements LimitAlgorithm {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+
+    AimdLimit(int minLimit, int maxLimit, double backoffRatio, long timeoutNanos) {
+        if (minLimit <= 0 || maxLimit < minLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Limits must be positive and the backoff ratio in (0, 1)");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    @Override
+    public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+        if (dropped || rttNanos > timeoutNanos) {
+            return Math.max(minLimit, (int) (limit * backoffRatio));
+        }
+        // a limit that isn't used says nothing about whether more would be fine
+        if (inFlight * 2 >= limit) {
+            return Math.min(maxLimit, limit + 1);
+        }
+
+        return limit;
+    }
+}
@@ -0,0 +1,167 @@
+package com.learning.async;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Collects single-key loads made from any thread into batches, DataLoader style. The first load opens a batch; the
+ * batch is dispatched with one call of the batch function once it holds {@code maxBatchSize} distinct keys or
+ * {@code maxDelay} after it was opened, whatever comes first. Every caller gets its own future, completed with the
+ * value of its key from the batch result, or with null if the result has no such key. Loads of a key already waiting
+ * in the open batch share its load, so duplicates inside a window cost nothing; each of them still gets a future of
+ * its own, so one caller giving up on its future doesn't fail the others.
+ * <p>
+ * If the batch function fails, every future of the batch fails with the same error. So do the futures still pending
+ * when the batch result is null or can't be read, none of them is left hanging.
+ */
+public class BatchLoader<K, V> {
+
+    private final Function<Set<K>, CompletableFuture<Map<K, V>>> batchFunction;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Timer timer;
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private Batch<K, V> open;
+
+    /**
+     * @param batchFunction loads the values of a set of keys with one backend call
+     * @param maxBatchSize the number of distinct keys that dispatches a batch immediately
+     * @param maxDelay how long a batch waits for more keys
+     */
+    public BatchLoader(Function<Set<K>, CompletableFuture<Map<K, V>>> batchFunction, int maxBatchSize, long maxDelay,
+                       TimeUnit unit) {
+        this(batchFunction, maxBatchSize, maxDelay, unit, Timeouts.getTimer());
+    }
+
+    /**
+     * @param timer dispatches batches whose delay has elapsed, the batch function is then called on the timer's thread
+     * and must only start the call
+     */
+    public BatchLoader(Function<Set<K>, CompletableFuture<Map<K, V>>> batchFunction, int maxBatchSize, long maxDelay,
+                       TimeUnit unit, Timer timer) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Max batch size must be positive: " + maxBatchSize);
+        }
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.timer = timer;
+    }
+
+    /**
+     * @return a future of the value, completed when the batch holding the key is loaded; cancelling it only gives up
+     * this load
+     */
+    public CompletableFuture<V> load(K key) {
+        loads.increment();
+
+        Batch<K, V> full = null;
+        CompletableFuture<V> future;
+        synchronized (this) {
+            if (open == null) {
+                Batch<K, V> batch = new Batch<>();
+                open = batch;
+                batch.delay = timer.newTimeout(() -> dispatchIfOpen(batch), maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+            future = open.futures.computeIfAbsent(key, ignored -> new CompletableFuture<>());
+            if (open.futures.size() >= maxBatchSize) {
+                full = open;
+                open = null;
+            }
+        }
+        if (full != null) {
+            full.delay.cancel();
+            dispatch(full);
+        }
+
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * Dispatches the open batch right away, without waiting for its delay.
+     */
+    public void flush() {
+        Batch<K, V> batch;
+        synchronized (this) {
+            batch = open;
+            open = null;
+        }
+        if (batch != null) {
+            batch.delay.cancel();
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * @return the number of loads requested
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return the number of calls of the batch function
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    private void dispatchIfOpen(Batch<K, V> batch) {
+        synchronized (this) {
+            if (open != batch) {
+                return;
+            }
+            open = null;
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch<K, V> batch) {
+        batches.increment();
+
+        CompletableFuture<Map<K, V>> result;
+        try {
+            result = Objects.requireNonNull(batchFunction.apply(batch.futures.keySet()),
+                    "Batch function returned no future");
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+
+        result.whenComplete((values, error) -> {
+            Throwable failure = error;
+            if (failure == null) {
+                try {
+                    Objects.requireNonNull(values, "Batch function completed without a map");
+                    batch.futures.forEach((key, future) -> future.complete(values.get(key)));
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                // futures completed before the failure keep their values
+                for (CompletableFuture<V> future : batch.futures.values()) {
+                    future.completeExceptionally(failure);
+                }
+            }
+        });
+    }
+
+    /**
+     * Keys of a batch with their futures. Only changed under the loader's lock while the batch is open, and read
+     * only after it's detached.
+     */
+    private static final class Batch<K, V> {
+
+        private final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        private Timeout delay;
+    }
+}
@@ -0,0 +1,127 @@
+package com.learning.async;
+
+import com.learning.util.Histogram;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size thread pool with a bounded queue, meant as a bulkhead: a service that blocks on a slow backend can only
+ * exhaust its own threads, not the common pool shared with parallel streams and every other service. Once all threads
+ * are busy and the queue is full, new tasks go to the rejection policy.
+ * <p>
+ * The pool is instrumented for sizing: queue depth and active threads can be sampled at any time, the time every task
+ * waited in the queue is recorded in a histogram, and rejected tasks are counted. Threads are daemons named after the
+ * pool, and idle threads exit after a minute.
+ */
+public class BoundedExecutor extends ThreadPoolExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final String name;
+    private final Histogram waitTime = new Histogram();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param name the prefix of the thread names
+     * @param threads the maximum number of tasks run at the same time
+     * @param queueCapacity the maximum number of waiting tasks, with 0 tasks are handed straight to an idle thread or
+     *                      rejected
+     * @param rejectionPolicy handles tasks that can't be accepted
+     */
+    public BoundedExecutor(String name, int threads, int queueCapacity, RejectedExecutionHandler rejectionPolicy) {
+        super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue(queueCapacity),
+                new NamedThreadFactory(name), rejectionPolicy);
+        setRejectedExecutionHandler((task, executor) -> {
+            rejected.increment();
+            rejectionPolicy.rejectedExecution(task, executor);
+        });
+        allowCoreThreadTimeOut(true);
+        this.name = name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedTask(command, System.nanoTime()));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * @return the time tasks spent in the queue before a thread picked them up, in nanoseconds
+     */
+    public Histogram getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return the number of tasks passed to the rejection policy
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[threads=" + getPoolSize() + ", active=" + getActiveCount() + ", queued=" + getQueueDepth()
+                + ", completed=" + getCompletedTaskCount() + ", rejected=" + getRejectedCount()
+                + ", wait=[" + waitTime + "]]";
+    }
+
+    private static BlockingQueue<Runnable> queue(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Queue capacity must not be negative: " + capacity);
+        }
+
+        return capacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(capacity);
+    }
+
+    private final class TimedTask implements Runnable {
+
+        private final Runnable task;
+        private final long submittedAt;
+
+        private TimedTask(Runnable task, long submittedAt) {
+            this.task = task;
+            this.submittedAt = submittedAt;
+        }
+
+        @Override
+        public void run() {
+            waitTime.record(System.nanoTime() - submittedAt);
+            task.run();
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
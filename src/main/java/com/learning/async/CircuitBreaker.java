@@ -0,0 +1,483 @@
+package com.learning.async;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Stops calling a backend that is failing or too slow, so callers fail fast and their fallbacks run right away
+ * instead of every call waiting for the backend and holding a thread while it does.
+ * <p>
+ * While the circuit is closed, the outcomes of the last calls are kept in a sliding window. Once the window holds the
+ * minimum number of calls and the rate of failures or of slow calls reaches its threshold, the circuit opens: calls
+ * fail with a {@link CircuitBreakerOpenException} without being made. After the wait in the open state, the circuit
+ * is half-open and lets a few trial calls through; if their rates are below the thresholds it closes, otherwise it
+ * opens again. A slow call counts as slow even if it succeeds. A cancelled call, e.g. the loser of a hedge, isn't
+ * recorded at all: the caller gave up on it, which says nothing about the backend.
+ * <p>
+ * The breaker takes no lock. Each state is an immutable generation with its own window, replaced by compare-and-set;
+ * a call records its outcome into the generation that let it through, so outcomes of calls started before a
+ * transition don't count against the new state. Trial calls that never complete keep the circuit half-open, so the
+ * calls need timeouts.
+ */
+public class CircuitBreaker {
+
+    /**
+     * States of the circuit.
+     */
+    public enum State {
+
+        /**
+         * Calls are made and their outcomes recorded.
+         */
+        CLOSED,
+
+        /**
+         * Calls fail right away.
+         */
+        OPEN,
+
+        /**
+         * A limited number of trial calls are made, the others fail right away.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Notified of every state transition, on the thread that caused it.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        void onStateTransition(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final long waitInOpenNanos;
+    private final int halfOpenCalls;
+    private final Predicate<? super Throwable> recordFailure;
+    private final LongSupplier ticker;
+    private final AtomicReference<Generation> generation;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder notPermitted = new LongAdder();
+    private final LongAdder transitions = new LongAdder();
+
+    private CircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationNanos = builder.slowCallDurationNanos;
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = builder.minimumCalls;
+        this.waitInOpenNanos = builder.waitInOpenNanos;
+        this.halfOpenCalls = builder.halfOpenCalls;
+        this.recordFailure = builder.recordFailure;
+        this.ticker = builder.ticker;
+        this.generation = new AtomicReference<>(closed());
+    }
+
+    /**
+     * @param name names the breaker in the messages of its exceptions
+     */
+    public static Builder newBuilder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * Makes the call if the circuit lets it through.
+     * @return a future completed like the call's once its outcome is recorded, cancelling it cancels the call; or a
+     * future failed with a {@link CircuitBreakerOpenException}. Completing it first, e.g. by a timeout, records the
+     * error as the call's outcome, or nothing if it's a cancellation or a value, and cancels the call
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletableFuture<T>> call) {
+        Generation permitted = acquire();
+        if (permitted == null) {
+            notPermitted.increment();
+            return Futures.failed(new CircuitBreakerOpenException("Circuit breaker " + name + " is open"));
+        }
+        long start = ticker.getAsLong();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = Futures.failed(e);
+        }
+        // recorded on the call's own future: a stage handed to the caller could be completed by the caller first,
+        // e.g. by a timeout, and would then skip the recording
+        CompletableFuture<T> made = future;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicBoolean ended = new AtomicBoolean();
+        made.whenComplete((value, error) -> {
+            if (ended.compareAndSet(false, true)) {
+                record(permitted, start, error);
+            }
+            // callers see the outcome only once it's recorded, so the call after a tripping failure is already rejected
+            if (error == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(unwrap(error));
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            // the caller gave up first: a timeout counts like a failure of the call, a cancellation isn't recorded
+            if (error == null) {
+                release(permitted);
+            } else {
+                record(permitted, start, error);
+            }
+            made.cancel(true);
+        });
+
+        return result;
+    }
+
+    public State getState() {
+        return generation.get().state;
+    }
+
+    /**
+     * @param listener notified of the state transitions from now on
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Closes the circuit with an empty window, e.g. after the backend was fixed.
+     */
+    public void reset() {
+        transition(generation.get(), closed());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the rate of failed calls in the current window, in percent, or -1 until it holds the minimum of calls
+     */
+    public double getFailureRate() {
+        return generation.get().window.failureRate();
+    }
+
+    /**
+     * @return the rate of slow calls in the current window, in percent, or -1 until it holds the minimum of calls
+     */
+    public double getSlowCallRate() {
+        return generation.get().window.slowCallRate();
+    }
+
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the number of calls slower than the slow call duration, successful or not
+     */
+    public long getSlowCallCount() {
+        return slowCalls.sum();
+    }
+
+    /**
+     * @return the number of calls failed without being made
+     */
+    public long getNotPermittedCount() {
+        return notPermitted.sum();
+    }
+
+    public long getTransitionCount() {
+        return transitions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker[" + name + ", " + getState() + "]";
+    }
+
+    /**
+     * @return the generation the call is let through by, null if it isn't
+     */
+    private Generation acquire() {
+        while (true) {
+            Generation current = generation.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case OPEN:
+                    if (ticker.getAsLong() - current.openedAt < waitInOpenNanos) {
+                        return null;
+                    }
+                    transition(current, new Generation(State.HALF_OPEN, 0, halfOpenCalls, halfOpenCalls));
+                    break;
+                default:
+                    return current.tryTakePermit() ? current : null;
+            }
+        }
+    }
+
+    private void record(Generation permitted, long start, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof CancellationException) {
+            release(permitted);
+            return;
+        }
+        boolean failed = cause != null && recordFailure.test(cause);
+        boolean slow = ticker.getAsLong() - start >= slowCallDurationNanos;
+        if (failed) {
+            failures.increment();
+        } else {
+            successes.increment();
+        }
+        if (slow) {
+            slowCalls.increment();
+        }
+
+        Window window = permitted.window;
+        window.record(failed, slow);
+        double failureRate = window.failureRate();
+        double slowCallRate = window.slowCallRate();
+        if (failureRate < 0) {
+            return;
+        }
+        boolean tripped = failureRate >= failureRateThreshold || slowCallRate >= slowCallRateThreshold;
+        if (tripped) {
+            transition(permitted, new Generation(State.OPEN, ticker.getAsLong(), windowSize, minimumCalls));
+        } else if (permitted.state == State.HALF_OPEN) {
+            transition(permitted, closed());
+        }
+    }
+
+    /**
+     * Ends a call without recording it, e.g. a cancelled one. A trial call gives its permit back, or the half-open
+     * window would never fill.
+     */
+    private void release(Generation permitted) {
+        if (permitted.state == State.HALF_OPEN) {
+            permitted.permits.incrementAndGet();
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Moves to the next generation unless another thread has moved on already.
+     */
+    private void transition(Generation from, Generation to) {
+        if (generation.compareAndSet(from, to)) {
+            transitions.increment();
+            for (Listener listener : listeners) {
+                listener.onStateTransition(this, from.state, to.state);
+            }
+        }
+    }
+
+    private Generation closed() {
+        return new Generation(State.CLOSED, 0, windowSize, minimumCalls);
+    }
+
+    /**
+     * One stay in a state, with the outcomes of the calls it let through.
+     */
+    private static final class Generation {
+
+        private final State state;
+        private final long openedAt;
+        private final Window window;
+        private final AtomicInteger permits;
+
+        private Generation(State state, long openedAt, int windowSize, int minimumCalls) {
+            this.state = state;
+            this.openedAt = openedAt;
+            this.window = new Window(windowSize, minimumCalls);
+            this.permits = new AtomicInteger(windowSize);
+        }
+
+        private boolean tryTakePermit() {
+            int left;
+            do {
+                left = permits.get();
+                if (left == 0) {
+                    return false;
+                }
+            } while (!permits.compareAndSet(left, left - 1));
+
+            return true;
+        }
+    }
+
+    /**
+     * The outcomes of the last calls in a ring, with running counts of the failed and slow ones. A recording thread
+     * swaps its outcome into the next slot and corrects the counts by the outcome it replaced, so the counts are
+     * exact once concurrent recordings are done.
+     */
+    private static final class Window {
+
+        private static final int RECORDED = 1;
+        private static final int FAILED = 2;
+        private static final int SLOW = 4;
+
+        private final AtomicIntegerArray outcomes;
+        private final int minimumCalls;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger slow = new AtomicInteger();
+
+        private Window(int size, int minimumCalls) {
+            this.outcomes = new AtomicIntegerArray(size);
+            this.minimumCalls = minimumCalls;
+        }
+
+        private void record(boolean isFailed, boolean isSlow) {
+            int outcome = RECORDED | (isFailed ? FAILED : 0) | (isSlow ? SLOW : 0);
+            long index = calls.getAndIncrement();
+            int replaced = outcomes.getAndSet((int) (index % outcomes.length()), outcome);
+            failed.addAndGet(count(outcome, FAILED) - count(replaced, FAILED));
+            slow.addAndGet(count(outcome, SLOW) - count(replaced, SLOW));
+        }
+
+        private double failureRate() {
+            return rate(failed.get());
+        }
+
+        private double slowCallRate() {
+            return rate(slow.get());
+        }
+
+        private double rate(int count) {
+            long size = Math.min(calls.get(), outcomes.length());
+
+            return size < minimumCalls ? -1 : count * 100.0 / size;
+        }
+
+        private static int count(int outcome, int flag) {
+            return (outcome & flag) != 0 ? 1 : 0;
+        }
+    }
+
+    public static final class Builder {
+
+        private final String name;
+        private double failureRateThreshold = 50;
+        private double slowCallRateThreshold = 100;
+        private long slowCallDurationNanos = TimeUnit.SECONDS.toNanos(60);
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private long waitInOpenNanos = TimeUnit.SECONDS.toNanos(30);
+        private int halfOpenCalls = 5;
+        private Predicate<? super Throwable> recordFailure = error -> true;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param percent the rate of failed calls that opens the circuit, 50 by default
+         */
+        public Builder failureRateThreshold(double percent) {
+            this.failureRateThreshold = checkPercent(percent);
+            return this;
+        }
+
+        /**
+         * @param percent the rate of slow calls that opens the circuit, 100 by default
+         * @param slowCallDuration the duration from which a call is slow, 60 seconds by default
+         */
+        public Builder slowCallRateThreshold(double percent, long slowCallDuration, TimeUnit unit) {
+            this.slowCallRateThreshold = checkPercent(percent);
+            this.slowCallDurationNanos = unit.toNanos(slowCallDuration);
+            return this;
+        }
+
+        /**
+         * @param windowSize the number of last calls the rates are computed over, 100 by default
+         * @param minimumCalls the number of calls before the rates count at all, 20 by default
+         */
+        public Builder slidingWindow(int windowSize, int minimumCalls) {
+            if (windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("Window size and minimum calls must be positive, the minimum at "
+                        + "most the size");
+            }
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * @param wait how long the circuit stays open before it lets trial calls through, 30 seconds by default
+         */
+        public Builder waitInOpen(long wait, TimeUnit unit) {
+            this.waitInOpenNanos = unit.toNanos(wait);
+            return this;
+        }
+
+        /**
+         * @param calls the number of trial calls in the half-open state, 5 by default
+         */
+        public Builder halfOpenCalls(int calls) {
+            if (calls <= 0) {
+                throw new IllegalArgumentException("Half-open calls must be positive: " + calls);
+            }
+            this.halfOpenCalls = calls;
+            return this;
+        }
+
+        /**
+         * @param recordFailure accepts the errors that count as failures, by default all of them; the others count as
+         *                      successes, e.g. a rejected invalid request says nothing about the backend's health. A
+         *                      cancellation is never recorded, whatever the predicate says
+         */
+        public Builder recordFailure(Predicate<? super Throwable> recordFailure) {
+            this.recordFailure = recordFailure;
+            return this;
+        }
+
+        /**
+         * @param ticker the time source of durations and of the wait in the open state, in nanoseconds
+         */
+        public Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+
+        private static double checkPercent(double percent) {
+            if (percent <= 0 || percent > 100) {
+                throw new IllegalArgumentException("Rate threshold must be in (0, 100]: " + percent);
+            }
+            return percent;
+        }
+    }
+}
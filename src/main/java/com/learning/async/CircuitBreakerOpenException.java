@@ -0,0 +1,13 @@
+package com.learning.async;
+
+/**
+ * Fails a call a {@link CircuitBreaker} didn't let through, without the backend being called.
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
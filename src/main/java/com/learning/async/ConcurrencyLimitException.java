@@ -0,0 +1,13 @@
+package com.learning.async;
+
+/**
+ * Fails a call a {@link ConcurrencyLimiter} shed, because its limit was reached and its queue was full.
+ */
+public class ConcurrencyLimitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrencyLimitException(String message) {
+        super(message);
+    }
+}
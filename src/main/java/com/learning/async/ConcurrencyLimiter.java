@@ -0,0 +1,255 @@
+package com.learning.async;
+
+import com.learning.util.Histogram;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits the calls in flight to a backend, with a limit that adapts to the backend instead of a fixed pool size.
+ * <p>
+ * Every completed call feeds its round-trip time to a {@link LimitAlgorithm}, which raises the limit while latency
+ * stays flat and lowers it once latency builds up or calls are dropped, so the limit follows the knee of the backend's
+ * throughput as its latency shifts. A call that finds the limit reached waits in a bounded queue and is started when
+ * a call completes; when the queue is full it's shed and fails with a {@link ConcurrencyLimitException}. A timeout or
+ * a rejection counts as a dropped call, other failures don't count at all. A call its caller gives up on, by a
+ * timeout or a cancellation, leaves the limit right away and is cancelled; the caller's timeout counts as a drop.
+ */
+public class ConcurrencyLimiter {
+
+    private final String name;
+    private final LimitAlgorithm algorithm;
+    private final int maxQueueSize;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final Queue<Queued<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final Histogram rtt = new Histogram();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile int limit;
+
+    /**
+     * @param name names the limiter in the messages of its exceptions
+     * @param algorithm adapts the limit, used by one thread at a time
+     * @param initialLimit the limit before any call completed
+     * @param maxQueueSize the calls waiting for the limit, beyond that they are shed; 0 sheds right away
+     */
+    public ConcurrencyLimiter(String name, LimitAlgorithm algorithm, int initialLimit, int maxQueueSize) {
+        if (initialLimit <= 0 || maxQueueSize < 0) {
+            throw new IllegalArgumentException("Initial limit must be positive, queue size not negative");
+        }
+        this.name = name;
+        this.algorithm = algorithm;
+        this.limit = initialLimit;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Makes the call now if the limit allows, otherwise once a call in flight completes.
+     * @return a future completed like the call's, completing it first, e.g. cancelling it or timing it out, cancels the
+     * call, or drops it from the queue if it hasn't started yet; or a future failed with a
+     * {@link ConcurrencyLimitException} if the call was shed
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletableFuture<T>> call) {
+        if (tryAcquire()) {
+            return start(call, new CompletableFuture<>());
+        }
+        if (queueSize.incrementAndGet() > maxQueueSize) {
+            queueSize.decrementAndGet();
+            shed.increment();
+            return Futures.failed(new ConcurrencyLimitException("Concurrency limit " + limit + " of " + name
+                    + " reached"));
+        }
+        Queued<T> queued = new Queued<>(call);
+        queue.add(queued);
+        queued.result.whenComplete((ignored, error) -> {
+            // a call its caller gave up on while waiting, cancelled or timed out, leaves the queue and is never made
+            if (queue.remove(queued)) {
+                queueSize.decrementAndGet();
+            }
+        });
+        // a call completed between the failed acquire and the enqueue may not have seen this one
+        drain();
+
+        return queued.result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /**
+     * @return the round-trip times of the completed calls, in nanoseconds
+     */
+    public Histogram getRtt() {
+        return rtt;
+    }
+
+    /**
+     * @return the number of calls failed because the queue was full
+     */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    /**
+     * @return the number of calls that timed out or were rejected downstream
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter[" + name + ", limit " + limit + ", in flight " + inFlight.get() + ", queued "
+                + queueSize.get() + "]";
+    }
+
+    private boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        return true;
+    }
+
+    /**
+     * Makes an admitted call and samples it when it completes, or when its caller gives up on it first.
+     * @param result the future handed out to the caller, completed like the call's
+     */
+    private <T> CompletableFuture<T> start(Supplier<? extends CompletableFuture<T>> call, CompletableFuture<T> result) {
+        int concurrency = inFlight.get();
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = Futures.failed(e);
+        }
+        // the call leaves the limit from its own future: a stage handed to the caller could be completed by the
+        // caller first, e.g. by a timeout, and would then never give the slot back
+        CompletableFuture<T> made = future;
+        AtomicBoolean ended = new AtomicBoolean();
+        made.whenComplete((value, error) -> {
+            if (ended.compareAndSet(false, true)) {
+                release(start, concurrency, error);
+            }
+            // callers see the outcome only once the call has left the limit, like the next call they make
+            if (error == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(unwrap(error));
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            if (ended.compareAndSet(false, true)) {
+                release(start, concurrency, error);
+                made.cancel(true);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Takes a completed call out of the limit. A timeout, the caller's included, or a rejection is sampled as a
+     * dropped call, a success as a plain one.
+     */
+    private void release(long start, int concurrency, Throwable error) {
+        Throwable cause = unwrap(error);
+        boolean isDropped = cause instanceof TimeoutException || cause instanceof RejectedExecutionException;
+        if (cause == null || isDropped) {
+            sample(System.nanoTime() - start, concurrency, isDropped);
+        }
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    private void sample(long rttNanos, int concurrency, boolean isDropped) {
+        rtt.record(rttNanos);
+        if (isDropped) {
+            dropped.increment();
+        }
+        synchronized (algorithm) {
+            limit = algorithm.update(limit, rttNanos, concurrency, isDropped);
+        }
+    }
+
+    /**
+     * Starts queued calls while the limit allows. Only one thread drains at a time: a call that completes right away
+     * asks for another drain instead of draining from within the drain, so a long queue of quick calls doesn't nest a
+     * stack frame per call. The draining thread goes round again for every request made while it drained.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            while (queueSize.get() > 0 && tryAcquire()) {
+                Queued<?> next = queue.poll();
+                if (next == null) {
+                    // the call counted in the queue size isn't in the queue yet, its enqueueing thread drains it
+                    inFlight.decrementAndGet();
+                    break;
+                }
+                queueSize.decrementAndGet();
+                if (next.result.isDone()) {
+                    // given up on while this thread polled it
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                start(next);
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    /**
+     * Starts a queued call, its future follows the call's.
+     */
+    private <T> void start(Queued<T> queued) {
+        start(queued.call, queued.result);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * A call waiting for the limit, with the future handed out to its caller.
+     */
+    private static final class Queued<T> {
+
+        private final Supplier<? extends CompletableFuture<T>> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Queued(Supplier<? extends CompletableFuture<T>> call) {
+            this.call = call;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.learning.async;
+
+import com.learning.util.ThreadUtils;
+import com.learning.util.TimeSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * A point in time by which a whole chain of calls has to complete. Giving every call of a chain its own timeout lets
+ * the chain take the sum of them; a deadline gives every call only what is left of the chain's budget, and a call
+ * isn't even started once the budget is spent:
+ * <pre>{@code
+ * Deadline deadline = Deadline.after(2, TimeUnit.SECONDS);
+ * deadline.bound(UserService.getUserDetails(userId))
+ *         .thenCompose(deadline.bind(CreditService::getUserCreditRating));
+ * }</pre>
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+    private final Timer timer;
+    private final TimeSource timeSource;
+
+    private Deadline(long deadlineNanos, Timer timer, TimeSource timeSource) {
+        this.deadlineNanos = deadlineNanos;
+        this.timer = timer;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * @return a deadline the given time from now on the time source of {@link ThreadUtils}, with its timeouts on the
+     * timer of {@link Timeouts} for that source
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        TimeSource timeSource = ThreadUtils.getTimeSource();
+
+        return after(timeout, unit, Timeouts.getTimer(timeSource), timeSource);
+    }
+
+    public static Deadline after(long timeout, TimeUnit unit, Timer timer) {
+        return after(timeout, unit, timer, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param timeSource the clock the deadline is measured on, it has to be the timer's clock as well
+     */
+    public static Deadline after(long timeout, TimeUnit unit, Timer timer, TimeSource timeSource) {
+        return new Deadline(timeSource.nanoTime() + unit.toNanos(timeout), timer, timeSource);
+    }
+
+    /**
+     * @return the time left until the deadline, 0 once it has passed
+     */
+    public long remaining(TimeUnit unit) {
+        return unit.convert(Math.max(deadlineNanos - timeSource.nanoTime(), 0), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - timeSource.nanoTime() <= 0;
+    }
+
+    /**
+     * Completes the future exceptionally with a {@link TimeoutException} unless it completes by the deadline.
+     * @return the given future
+     */
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future) {
+        long remaining = deadlineNanos - timeSource.nanoTime();
+        if (remaining <= 0) {
+            future.completeExceptionally(expired());
+
+            return future;
+        }
+
+        return Timeouts.orTimeout(future, remaining, TimeUnit.NANOSECONDS, timer);
+    }
+
+    /**
+     * Wraps the next call of a chain for {@link CompletableFuture#thenCompose(Function)}: the call gets the time left
+     * when its input is ready, and isn't made at all if the deadline has passed by then.
+     */
+    public <T, U> Function<T, CompletableFuture<U>> bind(Function<? super T, ? extends CompletableFuture<U>> call) {
+        return input -> isExpired() ? Futures.failed(expired()) : bound(call.apply(input));
+    }
+
+    private TimeoutException expired() {
+        return new TimeoutException("Deadline expired");
+    }
+}
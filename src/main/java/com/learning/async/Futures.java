@@ -0,0 +1,212 @@
+package com.learning.async;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for {@link CompletableFuture}s.
+ * <p>
+ * The combinators of many futures register one callback per future on a shared counter, instead of the tree of
+ * dependent futures {@link CompletableFuture#allOf(CompletableFuture[])} builds, so a fan-out of thousands of futures
+ * costs one small allocation per future and its completion never recurses deeper than one callback.
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync(Supplier, Executor)}, but a task the executor rejects fails the
+     * returned future instead of throwing, so callers handle an overloaded executor like any other failure.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * @return a future completed exceptionally with the error
+     */
+    public static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+
+        return future;
+    }
+
+    /**
+     * Like {@link CompletableFuture#allOf(CompletableFuture[])}, but the result holds the values, nothing has to be
+     * joined again.
+     * @return a future completed once all the futures have completed, with their values in the same order, or failed
+     * with the failure of the first failed one in that order
+     */
+    public static <T> CompletableFuture<List<T>> allAsList(List<? extends CompletableFuture<? extends T>> futures) {
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        collect(futures, error -> { }, outcomes -> {
+            Throwable error = outcomes.getFirstError();
+            if (error == null) {
+                result.complete(outcomes.asList());
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * @return a future completed once all the futures have completed, with the values of the successful ones and the
+     * errors of the others; it never fails
+     */
+    public static <T> CompletableFuture<Outcomes<T>> allSuccessful(
+            List<? extends CompletableFuture<? extends T>> futures) {
+        CompletableFuture<Outcomes<T>> result = new CompletableFuture<>();
+        collect(futures, error -> { }, result::complete);
+
+        return result;
+    }
+
+    /**
+     * Like {@link #allAsList(List)}, but doesn't wait for the other futures once one fails: they are cancelled, as
+     * their values won't be used anyway.
+     * @return a future completed with the values of all the futures, or failed with the first failure as soon as it
+     * happens; cancelling it cancels the futures
+     */
+    public static <T> CompletableFuture<List<T>> allOrFailFast(
+            List<? extends CompletableFuture<? extends T>> futures) {
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                for (CompletableFuture<? extends T> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        });
+        collect(futures, result::completeExceptionally, outcomes -> result.complete(outcomes.asList()));
+
+        return result;
+    }
+
+    /**
+     * Calls back on each failure as it happens, and once with the outcomes of all the futures.
+     */
+    private static <T> void collect(List<? extends CompletableFuture<? extends T>> futures,
+                                    Consumer<Throwable> onError, Consumer<Outcomes<T>> onAll) {
+        Outcomes<T> outcomes = new Outcomes<>(futures.size());
+        if (futures.isEmpty()) {
+            onAll.accept(outcomes);
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (int i = 0; i < futures.size(); ++i) {
+            int index = i;
+            futures.get(i).whenComplete((value, error) -> {
+                if (error == null) {
+                    outcomes.values[index] = value;
+                } else {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error;
+                    outcomes.errors[index] = cause;
+                    onError.accept(cause);
+                }
+                // the decrement publishes the outcome written above to the thread that counts down to 0
+                if (remaining.decrementAndGet() == 0) {
+                    onAll.accept(outcomes);
+                }
+            });
+        }
+    }
+
+    /**
+     * The values and errors of a list of completed futures, by their index in the list.
+     */
+    public static final class Outcomes<T> {
+
+        private final Object[] values;
+        private final Throwable[] errors;
+
+        private Outcomes(int size) {
+            this.values = new Object[size];
+            this.errors = new Throwable[size];
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public boolean isSuccessful(int index) {
+            return errors[index] == null;
+        }
+
+        /**
+         * @return the value of the future, null if it failed
+         */
+        @SuppressWarnings("unchecked")
+        public T getValue(int index) {
+            return (T) values[index];
+        }
+
+        /**
+         * @return the error of the future, null if it succeeded
+         */
+        public Throwable getError(int index) {
+            return errors[index];
+        }
+
+        /**
+         * @return the values of the successful futures, in their order
+         */
+        public List<T> getValues() {
+            List<T> result = new ArrayList<>(values.length);
+            for (int i = 0; i < values.length; ++i) {
+                if (errors[i] == null) {
+                    result.add(getValue(i));
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * @return the errors of the failed futures, in their order
+         */
+        public List<Throwable> getErrors() {
+            List<Throwable> result = new ArrayList<>();
+            for (Throwable error : errors) {
+                if (error != null) {
+                    result.add(error);
+                }
+            }
+
+            return result;
+        }
+
+        private Throwable getFirstError() {
+            for (Throwable error : errors) {
+                if (error != null) {
+                    return error;
+                }
+            }
+
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<T> asList() {
+            return Collections.unmodifiableList(Arrays.asList((T[]) values));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.learning.async;
+
+/**
+ * @see LimitAlgorithm#gradient(int, int)
+ */
+final class GradientLimit implements LimitAlgorithm {
+
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final NoLoadRtt noLoadRtt = new NoLoadRtt();
+    private double estimate;
+
+    GradientLimit(int minLimit, int maxLimit) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must be positive, the maximum at least the minimum");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+        long rttNoLoad = noLoadRtt.update(rttNanos);
+        if (estimate == 0 || Math.abs(estimate - limit) >= 1) {
+            estimate = limit;
+        }
+        if (!dropped && inFlight * 2 < limit) {
+            return limit;
+        }
+
+        double gradient = dropped
+                ? MIN_GRADIENT
+                : Math.max(MIN_GRADIENT, Math.min(1.0, (double) rttNoLoad / rttNanos));
+        double target = estimate * gradient + Math.sqrt(estimate);
+        estimate = Math.max(minLimit, Math.min(maxLimit, estimate * (1 - SMOOTHING) + target * SMOOTHING));
+
+        return (int) estimate;
+    }
+}
@@ -0,0 +1,250 @@
+package com.learning.async;
+
+import com.learning.util.Histogram;
+import com.learning.util.ThreadUtils;
+import com.learning.util.TimeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests against tail latency: when a call hasn't completed after the delay within which most calls do, the
+ * same call is made a second time, and whichever completes first successfully wins. The loser is cancelled. With the
+ * delay at the 95th percentile of the latency about 5% of the calls are duplicated, in exchange the slowest calls take
+ * about the percentile plus a typical call instead of however long a stalled backend needs.
+ * <p>
+ * The delay follows the latency of the attempts made through the hedger. A successful attempt records how long it
+ * took; a loser cancelled while still running records how long it had run by then, a lower bound of its latency.
+ * Leaving the losers out would keep exactly the slow attempts out of the histogram, so the percentile would sink with
+ * every hedge and send ever more of them. The delay is taken from a window of the last {@value #WINDOW_SAMPLES}
+ * attempts, so it follows a backend that gets slower or faster; until enough attempts are recorded, the initial delay
+ * is used. A failure of one attempt isn't retried: the hedged call fails
+ * once no attempt is running and no hedge will be started anymore. Only idempotent calls can be hedged, and a call
+ * deduplicated by a {@link SingleFlight} has to bypass it, or the hedge just joins the stalled call.
+ */
+public class Hedger {
+
+    private static final int MIN_SAMPLES = 20;
+    private static final int WINDOW_SAMPLES = 1000;
+
+    private final double percentile;
+    private final long initialDelayNanos;
+    private final Timer timer;
+    private final TimeSource timeSource;
+    private final Histogram latency = new Histogram();
+    private final AtomicReference<Histogram> window = new AtomicReference<>(new Histogram());
+    private volatile Histogram lastWindow;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * Measures the latencies on the time source of {@link ThreadUtils}, with the timer of {@link Timeouts} for it.
+     * @param percentile the percentile of the latency after which the hedge is sent, e.g. 95
+     * @param initialDelay the delay until enough latencies are recorded
+     */
+    public Hedger(double percentile, long initialDelay, TimeUnit unit) {
+        this(percentile, initialDelay, unit, ThreadUtils.getTimeSource());
+    }
+
+    private Hedger(double percentile, long initialDelay, TimeUnit unit, TimeSource timeSource) {
+        this(percentile, initialDelay, unit, Timeouts.getTimer(timeSource), timeSource);
+    }
+
+    public Hedger(double percentile, long initialDelay, TimeUnit unit, Timer timer) {
+        this(percentile, initialDelay, unit, timer, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param timeSource the clock of the latencies, it has to be the timer's clock as well
+     */
+    public Hedger(double percentile, long initialDelay, TimeUnit unit, Timer timer, TimeSource timeSource) {
+        this.percentile = percentile;
+        this.initialDelayNanos = unit.toNanos(initialDelay);
+        this.timer = timer;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * @param call makes the call, once or twice
+     * @return the result of the first attempt that succeeds, cancelling it cancels the attempts
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletableFuture<T>> call) {
+        calls.increment();
+        HedgedCall<T> hedged = new HedgedCall<>();
+        hedged.begin(false);
+        attempt(hedged, call, false);
+
+        Timeout hedge = timer.newTimeout(() -> {
+            if (hedged.begin(true)) {
+                hedges.increment();
+                attempt(hedged, call, true);
+            }
+        }, getDelay(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+
+        hedged.result.whenComplete((ignored, error) -> {
+            hedge.cancel();
+            hedged.cancelAttempts();
+        });
+
+        return hedged.result;
+    }
+
+    /**
+     * @return the current delay before a hedge is sent
+     */
+    public long getDelay(TimeUnit unit) {
+        Histogram recent = lastWindow != null ? lastWindow : window.get();
+        long delayNanos = recent.getCount() < MIN_SAMPLES ? initialDelayNanos : recent.getPercentile(percentile);
+
+        return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the latency of every successful attempt and the run time of every cancelled one so far, in nanoseconds
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the number of duplicate calls sent
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return the number of calls won by the duplicate
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    private <T> void attempt(HedgedCall<T> hedged, Supplier<? extends CompletableFuture<T>> call, boolean isHedge) {
+        long start = timeSource.nanoTime();
+        CompletableFuture<T> attempt;
+        try {
+            attempt = call.get();
+        } catch (RuntimeException e) {
+            attempt = Futures.failed(e);
+        }
+        hedged.add(attempt);
+
+        attempt.whenComplete((value, error) -> {
+            if (error == null) {
+                record(timeSource.nanoTime() - start);
+                // counted before the caller can see the result
+                if (hedged.win()) {
+                    if (isHedge) {
+                        hedgeWins.increment();
+                    }
+                    hedged.result.complete(value);
+                }
+                return;
+            }
+            if (error instanceof CancellationException) {
+                // censored: the loser would have taken at least this long
+                record(timeSource.nanoTime() - start);
+            }
+            if (hedged.end()) {
+                hedged.result.completeExceptionally(error);
+            }
+        });
+    }
+
+    private void record(long latencyNanos) {
+        latency.record(latencyNanos);
+        Histogram current = window.get();
+        current.record(latencyNanos);
+        // a few samples recorded into a window just replaced are lost, which doesn't move a percentile
+        if (current.getCount() >= WINDOW_SAMPLES && window.compareAndSet(current, new Histogram())) {
+            lastWindow = current;
+        }
+    }
+
+    /**
+     * The attempts of one hedged call.
+     */
+    private static final class HedgedCall<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        // guarded by this
+        private final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+        private int running;
+        private boolean hedgeDecided;
+        private boolean won;
+
+        /**
+         * @return false if the call is already over, no attempt is to be made
+         */
+        private synchronized boolean begin(boolean isHedge) {
+            if (isHedge) {
+                if (hedgeDecided || result.isDone()) {
+                    return false;
+                }
+                hedgeDecided = true;
+            }
+            ++running;
+
+            return true;
+        }
+
+        /**
+         * @return true for the first successful attempt
+         */
+        private synchronized boolean win() {
+            if (won) {
+                return false;
+            }
+            won = true;
+
+            return true;
+        }
+
+        /**
+         * Ends a failed attempt.
+         * @return true if it was the last one, no attempt is running and no hedge will start
+         */
+        private synchronized boolean end() {
+            --running;
+            if (running > 0) {
+                return false;
+            }
+            hedgeDecided = true;
+
+            return true;
+        }
+
+        private void add(CompletableFuture<T> attempt) {
+            boolean over;
+            synchronized (this) {
+                attempts.add(attempt);
+                over = result.isDone();
+            }
+            if (over) {
+                attempt.cancel(true);
+            }
+        }
+
+        private void cancelAttempts() {
+            List<CompletableFuture<T>> losers;
+            synchronized (this) {
+                losers = new ArrayList<>(attempts);
+            }
+            for (CompletableFuture<T> attempt : losers) {
+                attempt.cancel(true);
+            }
+        }
+    }
+}
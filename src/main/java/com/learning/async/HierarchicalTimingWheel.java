@@ -0,0 +1,326 @@
+package com.learning.async;
+
+import com.learning.util.TimeSource;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer for millions of pending timeouts, with constant-time scheduling and cancelling however many are pending and
+ * however far away their deadlines are.
+ * <p>
+ * Deadlines are counted in ticks and kept in a hierarchy of six wheels of 256 slots: the first wheel holds the
+ * timeouts due within 256 ticks, one slot per tick, each higher wheel holds 256 times longer ranges per slot. Whenever
+ * a wheel has turned once, the next slot of the wheel above is cascaded into the lower wheels, so every timeout is
+ * moved at most once per level instead of being visited at every turn like in a single hashed wheel. Slots are doubly
+ * linked lists, a timeout is linked and unlinked in constant time.
+ * <p>
+ * Only the daemon worker thread touches the wheels: callers append new and cancelled timeouts to lock-free queues,
+ * and the worker applies them at its next tick. A timeout fires up to one tick late, never early. While no timeout is
+ * pending the worker doesn't wake up at every tick. Ticks are counted on a {@link TimeSource}, the real time unless
+ * another one is given, e.g. a {@code VirtualTimeSource} that lets a test run hours of timeouts in milliseconds.
+ */
+public class HierarchicalTimingWheel implements Timer, AutoCloseable {
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 6;
+    // deadlines further away are parked in the top wheel and placed again when it cascades
+    private static final long MAX_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+    private static final long DEFAULT_TICK_MILLIS = 1;
+
+    private final long tickNanos;
+    private final Slot[][] wheels = new Slot[LEVELS][WHEEL_SIZE];
+    private final Queue<WheelTimeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final TimeSource timeSource;
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean idle;
+    private volatile boolean closed;
+
+    // worker only
+    private long tick;
+    private long size;
+
+    /**
+     * Creates a timer with a 1ms tick.
+     */
+    public HierarchicalTimingWheel(String name) {
+        this(name, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param name the name of the worker thread
+     * @param tick the precision of the timer; a shorter tick makes the worker wake up more often while timeouts are
+     *             pending
+     */
+    public HierarchicalTimingWheel(String name, long tick, TimeUnit unit) {
+        this(name, tick, unit, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param timeSource the clock of the deadlines, the worker sleeps from tick to tick on it
+     */
+    public HierarchicalTimingWheel(String name, long tick, TimeUnit unit, TimeSource timeSource) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        this.tickNanos = unit.toNanos(tick);
+        this.timeSource = timeSource;
+        this.startTime = timeSource.nanoTime();
+        for (Slot[] wheel : wheels) {
+            for (int i = 0; i < WHEEL_SIZE; ++i) {
+                wheel[i] = new Slot();
+            }
+        }
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (closed) {
+            throw new IllegalStateException("Timer " + worker.getName() + " is stopped");
+        }
+        long deadline = timeSource.nanoTime() - startTime + Math.max(unit.toNanos(delay), 0);
+        WheelTimeout timeout = new WheelTimeout(this, task, deadline / tickNanos);
+        pending.incrementAndGet();
+        added.add(timeout);
+        if (idle) {
+            LockSupport.unpark(worker);
+        }
+
+        return timeout;
+    }
+
+    /**
+     * @return the number of timeouts neither run nor cancelled yet
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the worker. Pending timeouts never run.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (!closed) {
+            if (size == 0 && added.isEmpty()) {
+                waitForTimeouts();
+                // an empty wheel has nothing to cascade, it jumps straight to the current tick
+                tick = Math.max(tick, (timeSource.nanoTime() - startTime) / tickNanos);
+                // timeouts due before the current tick are overdue already, they don't wait for it to end
+                transferAdded();
+                continue;
+            }
+            long end = tickNanos * (tick + 1);
+            long sleepNanos;
+            while ((sleepNanos = end - (timeSource.nanoTime() - startTime)) > 0 && !closed) {
+                try {
+                    timeSource.sleep(sleepNanos, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    // only close() interrupts the worker
+                    return;
+                }
+            }
+            removeCancelled();
+            transferAdded();
+            cascade();
+            expire(wheels[0][(int) (tick & WHEEL_MASK)]);
+            ++tick;
+        }
+    }
+
+    private void waitForTimeouts() {
+        idle = true;
+        // a timeout added before the flag was seen by its caller is caught by this check
+        while (added.isEmpty() && !closed) {
+            LockSupport.park(this);
+        }
+        idle = false;
+        removeCancelled();
+    }
+
+    private void removeCancelled() {
+        WheelTimeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.slot != null) {
+                timeout.slot.remove(timeout);
+                --size;
+            }
+        }
+    }
+
+    private void transferAdded() {
+        WheelTimeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            if (timeout.deadlineTick < tick) {
+                timeout.expire();
+            } else {
+                place(timeout);
+                ++size;
+            }
+        }
+    }
+
+    /**
+     * Links the timeout into the lowest wheel whose range covers its deadline, a passed deadline into the slot of
+     * the current tick.
+     */
+    private void place(WheelTimeout timeout) {
+        long deadline = Math.max(timeout.deadlineTick, tick);
+        long delta = Math.min(deadline - tick, MAX_TICKS);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            ++level;
+        }
+        wheels[level][(int) (((tick + delta) >>> (WHEEL_BITS * level)) & WHEEL_MASK)].add(timeout);
+    }
+
+    /**
+     * When the wheel below has turned once, the next slot of each wheel above holds the timeouts due within that
+     * turn; they move down to wheels closer to their deadline.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; ++level) {
+            if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                return;
+            }
+            Slot slot = wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+            WheelTimeout timeout;
+            while ((timeout = slot.poll()) != null) {
+                place(timeout);
+            }
+        }
+    }
+
+    private void expire(Slot slot) {
+        WheelTimeout timeout;
+        while ((timeout = slot.poll()) != null) {
+            --size;
+            timeout.expire();
+        }
+    }
+
+    private static final class WheelTimeout implements Timeout {
+
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+        private final HierarchicalTimingWheel timer;
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile int state = INIT;
+
+        // worker only
+        private Slot slot;
+        private WheelTimeout previous;
+        private WheelTimeout next;
+
+        private WheelTimeout(HierarchicalTimingWheel timer, Runnable task, long deadlineTick) {
+            this.timer = timer;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+                return false;
+            }
+            timer.pending.decrementAndGet();
+            // only the worker touches the wheels, it unlinks the timeout at its next tick
+            timer.cancelled.add(this);
+
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, INIT, EXPIRED)) {
+                return;
+            }
+            timer.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // a failing task must not kill the worker and with it every other timeout
+                Thread worker = Thread.currentThread();
+                worker.getUncaughtExceptionHandler().uncaughtException(worker, e);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts of one slot. Only accessed by the worker.
+     */
+    private static final class Slot {
+
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        private void add(WheelTimeout timeout) {
+            timeout.slot = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        private WheelTimeout poll() {
+            WheelTimeout timeout = head;
+            if (timeout != null) {
+                remove(timeout);
+            }
+
+            return timeout;
+        }
+
+        private void remove(WheelTimeout timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.slot = null;
+        }
+    }
+}
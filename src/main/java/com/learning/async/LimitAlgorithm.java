@@ -0,0 +1,44 @@
+package com.learning.async;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides the concurrency limit of a {@link ConcurrencyLimiter} from the round-trip times of the calls. Algorithms
+ * keep state between samples; the limiter calls them one sample at a time.
+ */
+public interface LimitAlgorithm {
+
+    /**
+     * @param limit the current limit
+     * @param rttNanos the round-trip time of a completed call
+     * @param inFlight the number of calls in flight when it was made, itself included
+     * @param dropped true if the call timed out or was rejected, a sign of overload whatever its round-trip time
+     * @return the new limit
+     */
+    int update(int limit, long rttNanos, int inFlight, boolean dropped);
+
+    /**
+     * Additive increase, multiplicative decrease: the limit grows by one per call while it's used, and is cut by the
+     * backoff ratio when a call is dropped or slower than the timeout. Reacts to overload only, not to latency
+     * building up below the timeout.
+     */
+    static LimitAlgorithm aimd(int minLimit, int maxLimit, double backoffRatio, long timeout, TimeUnit unit) {
+        return new AimdLimit(minLimit, maxLimit, backoffRatio, unit.toNanos(timeout));
+    }
+
+    /**
+     * TCP Vegas: estimates the calls queued at the backend from how far the round-trip time is above the time without
+     * load, and keeps that queue between a few calls and a few more.
+     */
+    static LimitAlgorithm vegas(int minLimit, int maxLimit) {
+        return new VegasLimit(minLimit, maxLimit);
+    }
+
+    /**
+     * Scales the limit by the ratio of the round-trip time without load to the current one, plus the square root of
+     * the limit as headroom for queueing, smoothed over samples. Settles a little above the knee of the throughput.
+     */
+    static LimitAlgorithm gradient(int minLimit, int maxLimit) {
+        return new GradientLimit(minLimit, maxLimit);
+    }
+}
@@ -0,0 +1,34 @@
+package com.learning.async;
+
+/**
+ * The round-trip time of a backend without queueing, as the latency-based {@link LimitAlgorithm}s compare every sample
+ * against it. It's the minimum of the samples, which follows the backend when the minimum over a window of samples
+ * shifts by more than a factor; smaller shifts are taken for queueing caused by the limit itself, adopting them would
+ * ratchet the limit up. Not thread-safe, like the algorithms using it.
+ */
+final class NoLoadRtt {
+
+    private static final int WINDOW = 500;
+    private static final int SHIFT = 2;
+
+    private long rttNoLoad = Long.MAX_VALUE;
+    private long windowMin = Long.MAX_VALUE;
+    private int samples;
+
+    /**
+     * @return the no-load time including the sample, in nanoseconds
+     */
+    long update(long rttNanos) {
+        windowMin = Math.min(windowMin, rttNanos);
+        rttNoLoad = Math.min(rttNoLoad, rttNanos);
+        if (++samples == WINDOW) {
+            if (windowMin > rttNoLoad * SHIFT) {
+                rttNoLoad = windowMin;
+            }
+            windowMin = Long.MAX_VALUE;
+            samples = 0;
+        }
+
+        return rttNoLoad;
+    }
+}
@@ -0,0 +1,156 @@
+package com.learning.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket that caps the rate of calls, e.g. to a backend, without a lock: its whole state is one atomic long.
+ * <p>
+ * Instead of a token count refilled over time, the bucket keeps the time at which it will be full again if nothing
+ * else is taken (a generic cell rate algorithm). Taking permits pushes that time forward by their interval; the
+ * permits are available as long as it stays within the burst of now. So an idle bucket allows a burst, and over time
+ * the rate holds exactly, however many threads take permits: each one is a single compare-and-set.
+ * <p>
+ * {@link #tryAcquire()} fails right away when no permit is available. {@link #acquire()} and {@link #acquireAsync()}
+ * reserve the next permits and wait for them, blocking the thread or on a timer; waiting callers are served in the
+ * order of their reservations, and a reservation isn't given back if the wait is abandoned.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier ticker;
+    private final Timer timer;
+    // the time at which the bucket is full again, relative to the ticker
+    private final AtomicLong fullAt;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param permitsPerSecond the sustained rate
+     * @param burst the permits an idle limiter hands out at once
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime, Timeouts.getTimer());
+    }
+
+    /**
+     * @param ticker the time source, in nanoseconds
+     * @param timer completes the futures of {@link #acquireAsync()}
+     */
+    public RateLimiter(double permitsPerSecond, int burst, LongSupplier ticker, Timer timer) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.intervalNanos = Math.max(Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond), 1);
+        this.burstNanos = intervalNanos * burst;
+        this.ticker = ticker;
+        this.timer = timer;
+        this.fullAt = new AtomicLong(ticker.getAsLong());
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * @return true if the permits were taken, false if not all of them are available now
+     */
+    public boolean tryAcquire(int permits) {
+        long cost = cost(permits);
+        long now = ticker.getAsLong();
+        long full;
+        long next;
+        do {
+            full = fullAt.get();
+            next = Math.max(full, now) + cost;
+            if (next - now > burstNanos) {
+                rejected.increment();
+                return false;
+            }
+        } while (!fullAt.compareAndSet(full, next));
+        acquired.add(permits);
+
+        return true;
+    }
+
+    /**
+     * Blocks until a permit is available.
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    public void acquire(int permits) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve(permits));
+    }
+
+    public CompletableFuture<Void> acquireAsync() {
+        return acquireAsync(1);
+    }
+
+    /**
+     * @return a future completed once the permits are available, by the timer's thread if they aren't right away
+     */
+    public CompletableFuture<Void> acquireAsync(int permits) {
+        long waitNanos = reserve(permits);
+        if (waitNanos == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        timer.newTimeout(() -> future.complete(null), waitNanos, TimeUnit.NANOSECONDS);
+
+        return future;
+    }
+
+    /**
+     * @return the number of permits that could be taken right now
+     */
+    public long getAvailablePermits() {
+        long now = ticker.getAsLong();
+
+        return Math.max(burstNanos - Math.max(fullAt.get() - now, 0), 0) / intervalNanos;
+    }
+
+    public double getRate() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos;
+    }
+
+    /**
+     * @return the number of permits handed out, including reserved ones still waiting
+     */
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /**
+     * @return the number of times {@link #tryAcquire(int)} found no permit
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Takes the permits whether they are available or not.
+     * @return how long the caller has to wait for them, in nanoseconds
+     */
+    private long reserve(int permits) {
+        long cost = cost(permits);
+        long now = ticker.getAsLong();
+        long next = fullAt.accumulateAndGet(now, (full, time) -> Math.max(full, time) + cost);
+        acquired.add(permits);
+
+        return Math.max(next - now - burstNanos, 0);
+    }
+
+    private long cost(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive: " + permits);
+        }
+
+        return intervalNanos * permits;
+    }
+}
@@ -0,0 +1,209 @@
+package com.learning.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries failed asynchronous calls without blocking any thread: the backoff before each retry is a timeout on a
+ * {@link Timer}, and the retry is made by the timer's thread when it fires.
+ * <p>
+ * The backoff grows exponentially from the base delay up to the maximum delay, and the actual delay is drawn
+ * uniformly between 0 and that ("full jitter"), so clients that failed together don't retry together. Only failures
+ * the predicate accepts are retried, up to the maximum number of attempts, and only while the {@link RetryBudget}
+ * allows. Each attempt can have its own timeout, so a hung attempt is retried instead of hanging the call. The
+ * returned future fails with the error of the last attempt; cancelling it cancels the current attempt and stops the
+ * retries.
+ * <pre>{@code
+ * Retry retry = Retry.newBuilder()
+ *         .maxAttempts(3)
+ *         .backoff(100, 2_000, TimeUnit.MILLISECONDS)
+ *         .attemptTimeout(5, TimeUnit.SECONDS)
+ *         .retryOn(error -> error instanceof SimulatedBackendException)
+ *         .build();
+ * retry.call(() -> CreditService.getUserCreditRating(user));
+ * }</pre>
+ */
+public class Retry {
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final long attemptTimeoutNanos;
+    private final Predicate<? super Throwable> retryOn;
+    private final RetryBudget budget;
+    private final Timer timer;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    private Retry(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayNanos = builder.baseDelayNanos;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.attemptTimeoutNanos = builder.attemptTimeoutNanos;
+        this.retryOn = builder.retryOn;
+        this.budget = builder.budget;
+        this.timer = builder.timer;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @param call makes one attempt; retries call it on the timer's thread, so it must only start the call
+     * @return the result of the first successful attempt
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletableFuture<T>> call) {
+        calls.increment();
+        if (budget != null) {
+            budget.deposit();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(call, result, 1);
+
+        return result;
+    }
+
+    /**
+     * @return the backoff before the given retry, before the jitter: the base delay doubled per earlier retry
+     */
+    public long getBackoff(int retry, TimeUnit unit) {
+        int doublings = Math.min(retry - 1, Long.numberOfLeadingZeros(baseDelayNanos) - 1);
+        long backoff = Math.min(baseDelayNanos << Math.max(doublings, 0), maxDelayNanos);
+
+        return unit.convert(backoff, TimeUnit.NANOSECONDS);
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the budget shared by the retries, null if only the number of attempts limits them
+     */
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    private <T> void attempt(Supplier<? extends CompletableFuture<T>> call, CompletableFuture<T> result,
+                             int attempt) {
+        // the caller gave up during the backoff
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = Futures.failed(e);
+        }
+        if (attemptTimeoutNanos > 0) {
+            future = Timeouts.orTimeout(future, attemptTimeoutNanos, TimeUnit.NANOSECONDS, timer);
+        }
+        CompletableFuture<T> current = future;
+        result.whenComplete((ignored, error) -> current.cancel(true));
+
+        current.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            if (attempt >= maxAttempts || result.isDone() || !retryOn.test(cause)
+                    || (budget != null && !budget.tryWithdraw())) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            retries.increment();
+            long delay = ThreadLocalRandom.current().nextLong(getBackoff(attempt, TimeUnit.NANOSECONDS) + 1);
+            timer.newTimeout(() -> attempt(call, result, attempt + 1), delay, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    public static final class Builder {
+
+        private int maxAttempts = 3;
+        private long baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(10);
+        private long attemptTimeoutNanos;
+        private Predicate<? super Throwable> retryOn = error -> true;
+        private RetryBudget budget;
+        private Timer timer = Timeouts.getTimer();
+
+        private Builder() {
+        }
+
+        /**
+         * Limits the attempts of one call, the first one included. 3 by default.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts <= 0) {
+                throw new IllegalArgumentException("Maximum attempts must be positive: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param baseDelay the backoff before the first retry, 100ms by default
+         * @param maxDelay the cap of the growing backoff, 10 seconds by default
+         */
+        public Builder backoff(long baseDelay, long maxDelay, TimeUnit unit) {
+            if (baseDelay <= 0 || maxDelay < baseDelay) {
+                throw new IllegalArgumentException("Delays must be positive, the maximum at least the base");
+            }
+            this.baseDelayNanos = unit.toNanos(baseDelay);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * Fails an attempt with a {@link java.util.concurrent.TimeoutException} unless it completes within the
+         * timeout, no timeout by default.
+         */
+        public Builder attemptTimeout(long timeout, TimeUnit unit) {
+            this.attemptTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * @param retryOn accepts the failures worth retrying, by default all of them
+         */
+        public Builder retryOn(Predicate<? super Throwable> retryOn) {
+            this.retryOn = retryOn;
+            return this;
+        }
+
+        /**
+         * Makes retries draw on the budget, which can be shared by several retries, e.g. of all calls to one
+         * backend. Without a budget only the number of attempts limits the retries.
+         */
+        public Builder budget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * @param timer schedules the backoffs and attempt timeouts, the shared timer of {@link Timeouts} by default
+         */
+        public Builder timer(Timer timer) {
+            this.timer = timer;
+            return this;
+        }
+
+        public Retry build() {
+            return new Retry(this);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.learning.async;
+
+import com.learning.util.ThreadUtils;
+import com.learning.util.TimeSource;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the rate of retries, so they can't multiply the load of a backend that is already failing. Per-call attempt
+ * limits don't do that: with 3 attempts per call an outage triples the traffic exactly when the backend can take it
+ * least.
+ * <p>
+ * The budget is a balance of retry tokens. Every call deposits a fraction of a token, and a minimum rate of tokens
+ * trickles in over time, so rarely used clients can retry at all; every retry withdraws one token or isn't made. With
+ * a ratio of 0.1 retries add at most 10% to the calls, whatever fails. The balance is capped at ten seconds of the
+ * minimum rate, or ten tokens, so a quiet period doesn't save up a burst of retries.
+ */
+public class RetryBudget {
+
+    private static final long MILLI = 1000;
+    private static final long CAP_SECONDS = 10;
+    private static final long MIN_CAP_TOKENS = 10;
+
+    private final long depositMillis;
+    private final long minRetriesPerSecond;
+    private final long capMillis;
+    private final AtomicLong balanceMillis;
+    private final TimeSource timeSource;
+    private final AtomicLong lastRefill;
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * @param ratio the retries allowed per call, e.g. 0.1
+     * @param minRetriesPerSecond the retries allowed however few calls are made
+     */
+    public RetryBudget(double ratio, long minRetriesPerSecond) {
+        this(ratio, minRetriesPerSecond, ThreadUtils.getTimeSource());
+    }
+
+    /**
+     * @param timeSource the clock of the minimum rate
+     */
+    public RetryBudget(double ratio, long minRetriesPerSecond, TimeSource timeSource) {
+        if (ratio < 0 || minRetriesPerSecond < 0) {
+            throw new IllegalArgumentException("Ratio and minimum rate must not be negative");
+        }
+        this.depositMillis = Math.round(ratio * MILLI);
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.capMillis = Math.max(minRetriesPerSecond * CAP_SECONDS, MIN_CAP_TOKENS) * MILLI;
+        this.balanceMillis = new AtomicLong(minRetriesPerSecond * MILLI);
+        this.timeSource = timeSource;
+        this.lastRefill = new AtomicLong(timeSource.nanoTime());
+    }
+
+    /**
+     * Records a call, which earns the ratio of a retry.
+     */
+    public void deposit() {
+        add(depositMillis);
+    }
+
+    /**
+     * @return true if a retry may be made, its token is withdrawn
+     */
+    public boolean tryWithdraw() {
+        refill();
+        long balance;
+        do {
+            balance = balanceMillis.get();
+            if (balance < MILLI) {
+                exhausted.increment();
+                return false;
+            }
+        } while (!balanceMillis.compareAndSet(balance, balance - MILLI));
+
+        return true;
+    }
+
+    /**
+     * @return the number of retries currently allowed
+     */
+    public long getBalance() {
+        refill();
+
+        return balanceMillis.get() / MILLI;
+    }
+
+    /**
+     * @return the number of retries refused for lack of tokens
+     */
+    public long getExhaustedCount() {
+        return exhausted.sum();
+    }
+
+    private void refill() {
+        if (minRetriesPerSecond == 0) {
+            return;
+        }
+        long last = lastRefill.get();
+        long now = timeSource.nanoTime();
+        long elapsed = Math.min(now - last, TimeUnit.SECONDS.toNanos(CAP_SECONDS));
+        long tokensMillis = elapsed * minRetriesPerSecond / (TimeUnit.SECONDS.toNanos(1) / MILLI);
+        // only one thread credits an interval, and only once it's worth a thousandth of a token
+        if (tokensMillis > 0 && lastRefill.compareAndSet(last, now)) {
+            add(tokensMillis);
+        }
+    }
+
+    private void add(long amountMillis) {
+        balanceMillis.accumulateAndGet(amountMillis, (balance, amount) -> Math.min(balance + amount, capMillis));
+    }
+}
@@ -0,0 +1,77 @@
+package com.learning.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent identical calls: while a call for a key is in flight, every other caller for the same key
+ * attaches to it instead of starting its own. The in-flight entry is removed as soon as the call completes, normally
+ * or exceptionally, so the next caller after that starts a fresh call; nothing is cached.
+ * <p>
+ * Every caller gets its own dependent future, cancelling or completing it doesn't affect the shared call or the other
+ * callers.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+
+    /**
+     * @param key the identity of the call
+     * @param call starts the call, invoked only if no call for the key is in flight
+     * @return a future of the shared call's result
+     */
+    public CompletableFuture<V> execute(K key, Supplier<? extends CompletableFuture<V>> call) {
+        calls.increment();
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing.thenApply(Function.identity());
+        }
+
+        executions.increment();
+        try {
+            call.get().whenComplete((value, error) -> {
+                // removed before completion, so a caller woken by the result can't attach to the finished flight
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    flight.completeExceptionally(error);
+                } else {
+                    flight.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+
+        return flight.thenApply(Function.identity());
+    }
+
+    /**
+     * @return the number of keys with a call in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return the number of {@link #execute} calls
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the number of calls actually started, the rest attached to a call in flight
+     */
+    public long getExecutionCount() {
+        return executions.sum();
+    }
+}
@@ -0,0 +1,20 @@
+package com.learning.async;
+
+/**
+ * Handle of a task scheduled on a {@link Timer}.
+ */
+public interface Timeout {
+
+    /**
+     * Cancels the task unless it has already run.
+     * @return true if the task was cancelled, false if it has already run or was cancelled before
+     */
+    boolean cancel();
+
+    boolean isCancelled();
+
+    /**
+     * @return true if the task has run or is running
+     */
+    boolean isExpired();
+}
@@ -0,0 +1,107 @@
+package com.learning.async;
+
+import com.learning.util.TimeSource;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Timeouts for {@link CompletableFuture}s, which Java 8 lacks: {@code orTimeout} and {@code completeOnTimeout} of
+ * Java 9. Without them a future of a hung backend call never completes, and neither does anything composed on it.
+ * <p>
+ * The timeouts are scheduled on one shared {@link HierarchicalTimingWheel} with a 1ms tick, and cancelled as soon as
+ * the future completes, so the millions of timeouts that never fire cost next to nothing. Dependent actions of a future
+ * completed by its timeout run on the timer's thread, unless they specify an executor.
+ */
+public final class Timeouts {
+
+    private static final Timer TIMER = new HierarchicalTimingWheel("timeouts-timer");
+
+    private Timeouts() {
+    }
+
+    /**
+     * @return the timer shared by the timeouts
+     */
+    public static Timer getTimer() {
+        return TIMER;
+    }
+
+    /**
+     * @return the shared timer for the real time, otherwise a timer whose timeouts are delays of the given source, so
+     * they fire on its clock
+     */
+    public static Timer getTimer(TimeSource timeSource) {
+        return timeSource == TimeSource.SYSTEM ? TIMER : new DelayTimer(timeSource);
+    }
+
+    /**
+     * Completes the future exceptionally with a {@link TimeoutException} unless it completes within the timeout.
+     * @return the given future
+     */
+    public static <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        return orTimeout(future, timeout, unit, TIMER);
+    }
+
+    /**
+     * @see #orTimeout(CompletableFuture, long, TimeUnit)
+     */
+    public static <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit,
+                                                     Timer timer) {
+        if (!future.isDone()) {
+            Timeout task = timer.newTimeout(() -> future.completeExceptionally(
+                    new TimeoutException("Timed out after " + timeout + " " + unit)), timeout, unit);
+            future.whenComplete((ignored, error) -> task.cancel());
+        }
+
+        return future;
+    }
+
+    /**
+     * Completes the future with the fallback value unless it completes within the timeout.
+     * @return the given future
+     */
+    public static <T> CompletableFuture<T> completeOnTimeout(CompletableFuture<T> future, T value, long timeout,
+                                                             TimeUnit unit) {
+        if (!future.isDone()) {
+            Timeout task = TIMER.newTimeout(() -> future.complete(value), timeout, unit);
+            future.whenComplete((ignored, error) -> task.cancel());
+        }
+
+        return future;
+    }
+
+    private static final class DelayTimer implements Timer {
+
+        private final TimeSource timeSource;
+
+        private DelayTimer(TimeSource timeSource) {
+            this.timeSource = timeSource;
+        }
+
+        @Override
+        public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+            CompletableFuture<Void> delayed = timeSource.delay(delay, unit);
+            delayed.thenRun(task);
+
+            return new Timeout() {
+                @Override
+                public boolean cancel() {
+                    // unlike CompletableFuture.cancel, only true for the call that cancels
+                    return delayed.completeExceptionally(new CancellationException());
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return delayed.isCancelled();
+                }
+
+                @Override
+                public boolean isExpired() {
+                    return delayed.isDone() && !delayed.isCancelled();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.learning.async;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules short tasks to run once after a delay, built for many pending timeouts that are mostly cancelled before
+ * they fire. Tasks run on the timer's own thread, so they must not block; completing a future is the typical task.
+ */
+public interface Timer {
+
+    /**
+     * @param task the task to run when the delay has elapsed
+     * @return a handle to cancel the task
+     * @throws IllegalStateException if the timer is stopped
+     */
+    Timeout newTimeout(Runnable task, long delay, TimeUnit unit);
+}
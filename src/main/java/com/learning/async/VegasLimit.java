@@ -0,0 +1,43 @@
+package com.learning.async;
+
+/**
+ * @see LimitAlgorithm#vegas(int, int)
+ */
+final class VegasLimit implements LimitAlgorithm {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final NoLoadRtt noLoadRtt = new NoLoadRtt();
+
+    VegasLimit(int minLimit, int maxLimit) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must be positive, the maximum at least the minimum");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+        long rttNoLoad = noLoadRtt.update(rttNanos);
+        int step = Math.max(1, (int) Math.log10(limit));
+        if (dropped) {
+            return Math.max(minLimit, limit - step);
+        }
+        if (inFlight * 2 < limit) {
+            return limit;
+        }
+
+        double queue = limit * (1 - (double) rttNoLoad / rttNanos);
+        int newLimit = limit;
+        if (queue <= step) {
+            newLimit = limit + 6 * step;
+        } else if (queue < 3 * step) {
+            newLimit = limit + step;
+        } else if (queue > 6 * step) {
+            newLimit = limit - step;
+        }
+
+        return Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
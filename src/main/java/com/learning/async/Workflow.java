@@ -0,0 +1,443 @@
+package com.learning.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A graph of asynchronous calls that depend on each other's results, run with as much parallelism as the dependencies
+ * allow.
+ * <p>
+ * Each node declares its inputs, and an execution starts a node as soon as the last of its inputs has completed: nodes
+ * without inputs start right away, independent branches run side by side, and nothing is serialized that doesn't have
+ * to be, unlike a chain of {@code thenCompose} calls written by hand. Nodes can only depend on nodes added before them,
+ * so the graph has no cycles.
+ * <p>
+ * When a node fails, the nodes depending on it are cancelled without being started, and running nodes whose results
+ * nothing needs anymore are cancelled too; the execution fails with the first failure. Each execution records when its
+ * nodes ran and reports its critical path: the chain of nodes, each started by the completion of the previous one, that
+ * decided how long the execution took.
+ * <pre>{@code
+ * Workflow.Builder builder = Workflow.newBuilder();
+ * Workflow.Node<User> user = builder.node("user", () -> UserService.getUserDetails(1L));
+ * Workflow.Node<Double> rating = builder.node("rating", user, CreditService::getUserCreditRating);
+ * Workflow.Node<Double> rate = builder.node("rate", CreditService::getInterestRate);
+ * Workflow.Node<Double> offer = builder.node("offer", rating, rate,
+ *         (userRating, interestRate) -> CompletableFuture.completedFuture(userRating * interestRate));
+ * Workflow.Execution execution = builder.build().execute();
+ * execution.get(offer).join();
+ * }</pre>
+ */
+public class Workflow {
+
+    private final List<Node<?>> nodes;
+    // the nodes depending on each node, by index
+    private final List<List<Node<?>>> dependents;
+    private final LongSupplier ticker;
+
+    private Workflow(Builder builder) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(builder.nodes));
+        this.dependents = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); ++i) {
+            dependents.add(new ArrayList<>());
+        }
+        for (Node<?> node : nodes) {
+            for (Node<?> input : node.inputs) {
+                dependents.get(input.index).add(node);
+            }
+        }
+        this.ticker = builder.ticker;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Starts the nodes without inputs; the others start on the thread that completes their last input, so each task
+     * must only start its call.
+     */
+    public Execution execute() {
+        Execution execution = new Execution(ticker.getAsLong());
+        for (Run<?> run : execution.runs) {
+            if (run.node.inputs.isEmpty()) {
+                execution.start(run, null);
+            }
+        }
+
+        return execution;
+    }
+
+    public List<Node<?>> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * A node of a workflow, which produces a value of type T.
+     */
+    public static final class Node<T> {
+
+        private final Builder owner;
+        private final int index;
+        private final String name;
+        private final List<Node<?>> inputs;
+        private final Function<Inputs, ? extends CompletableFuture<T>> task;
+
+        private Node(Builder owner, int index, String name, List<Node<?>> inputs,
+                     Function<Inputs, ? extends CompletableFuture<T>> task) {
+            this.owner = owner;
+            this.index = index;
+            this.name = name;
+            this.inputs = inputs;
+            this.task = task;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Node<?>> getInputs() {
+            return inputs;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The results of the inputs of a node, all of them completed successfully.
+     */
+    public static final class Inputs {
+
+        private final Execution execution;
+        private final Node<?> node;
+
+        private Inputs(Execution execution, Node<?> node) {
+            this.execution = execution;
+            this.node = node;
+        }
+
+        public <T> T get(Node<T> input) {
+            if (!node.inputs.contains(input)) {
+                throw new IllegalArgumentException(input + " is not an input of " + node);
+            }
+
+            return execution.run(input).result.join();
+        }
+    }
+
+    /**
+     * One run of the workflow.
+     */
+    public final class Execution {
+
+        private final List<Run<?>> runs = new ArrayList<>(nodes.size());
+        private final AtomicInteger remaining = new AtomicInteger(nodes.size());
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final long startNanos;
+
+        private Execution(long startNanos) {
+            this.startNanos = startNanos;
+            for (Node<?> node : nodes) {
+                runs.add(new Run<>(node));
+            }
+            for (Run<?> run : runs) {
+                run.result.whenComplete((ignored, error) -> complete(run, error));
+            }
+            completion.whenComplete((ignored, error) -> {
+                if (completion.isCancelled()) {
+                    cancel();
+                }
+            });
+        }
+
+        /**
+         * @return the result of the node, cancelling it cancels the node and what depends on it
+         */
+        public <T> CompletableFuture<T> get(Node<T> node) {
+            return run(node).result;
+        }
+
+        /**
+         * @return a future completed once every node has completed, failed with the first failure of a node;
+         * cancelling it cancels the execution
+         */
+        public CompletableFuture<Void> toCompletableFuture() {
+            return completion;
+        }
+
+        public void cancel() {
+            for (Run<?> run : runs) {
+                run.result.cancel(true);
+            }
+        }
+
+        /**
+         * @return the nodes from a node without inputs up to the node that completed last, each started by the
+         * completion of the one before it; empty until a node completed, cancelled nodes aren't on it
+         */
+        public List<Node<?>> getCriticalPath() {
+            Run<?> last = null;
+            // on a tie the later node wins, it can depend on the earlier one but not the other way round
+            for (Run<?> run : runs) {
+                boolean ran = run.started && run.result.isDone() && !run.result.isCancelled();
+                if (ran && (last == null || run.endNanos - last.endNanos >= 0)) {
+                    last = run;
+                }
+            }
+            List<Node<?>> path = new ArrayList<>();
+            for (Run<?> run = last; run != null; run = run.trigger) {
+                path.add(run.node);
+            }
+            Collections.reverse(path);
+
+            return path;
+        }
+
+        /**
+         * @return how long the node took from its start to its completion, 0 if it wasn't started or is running
+         */
+        public long getRunTime(Node<?> node, TimeUnit unit) {
+            Run<?> run = run(node);
+            if (!run.started || !run.result.isDone()) {
+                return 0;
+            }
+
+            return unit.convert(run.endNanos - run.startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return how long the execution took up to the completion of its last node, or has taken so far
+         */
+        public long getElapsed(TimeUnit unit) {
+            long end = ticker.getAsLong();
+            if (completion.isDone()) {
+                end = startNanos;
+                for (Run<?> run : runs) {
+                    if (run.started && run.endNanos - end > 0) {
+                        end = run.endNanos;
+                    }
+                }
+            }
+
+            return unit.convert(end - startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return the critical path with the run time of each node, e.g. "user 120ms -> rating 80ms"
+         */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            for (Node<?> node : getCriticalPath()) {
+                if (result.length() > 0) {
+                    result.append(" -> ");
+                }
+                result.append(node.name).append(' ').append(getRunTime(node, TimeUnit.MILLISECONDS)).append("ms");
+            }
+
+            return result.toString();
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> Run<T> run(Node<T> node) {
+            if (node.index >= runs.size() || runs.get(node.index).node != node) {
+                throw new IllegalArgumentException(node + " is not a node of this workflow");
+            }
+
+            return (Run<T>) runs.get(node.index);
+        }
+
+        /**
+         * Starts a node whose inputs have all completed, unless it was cancelled meanwhile.
+         * @param trigger the input that completed last, null for a node without inputs
+         */
+        private <T> void start(Run<T> run, Run<?> trigger) {
+            if (run.result.isDone()) {
+                return;
+            }
+            run.trigger = trigger;
+            run.startNanos = ticker.getAsLong();
+            run.started = true;
+            CompletableFuture<T> future;
+            try {
+                future = run.node.task.apply(new Inputs(this, run.node));
+            } catch (RuntimeException e) {
+                future = Futures.failed(e);
+            }
+            CompletableFuture<T> call = future;
+            run.result.whenComplete((ignored, error) -> {
+                if (run.result.isCancelled()) {
+                    call.cancel(true);
+                }
+            });
+            call.whenComplete((value, error) -> {
+                run.endNanos = ticker.getAsLong();
+                if (error == null) {
+                    run.result.complete(value);
+                    return;
+                }
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error;
+                // a node's own failure, not the cancellation that follows it downstream
+                if (!run.result.isDone()) {
+                    failure.compareAndSet(null, cause);
+                }
+                run.result.completeExceptionally(cause);
+            });
+        }
+
+        private void complete(Run<?> run, Throwable error) {
+            if (!run.started) {
+                run.endNanos = ticker.getAsLong();
+            }
+            List<Node<?>> next = dependents.get(run.node.index);
+            if (error == null) {
+                for (Node<?> dependent : next) {
+                    Run<?> dependentRun = runs.get(dependent.index);
+                    if (dependentRun.pending.decrementAndGet() == 0) {
+                        start(dependentRun, run);
+                    }
+                }
+            } else {
+                for (Node<?> dependent : next) {
+                    runs.get(dependent.index).result.cancel(true);
+                }
+                // the inputs of a node that won't run are only worth finishing if something else needs them
+                for (Node<?> input : run.node.inputs) {
+                    Run<?> inputRun = runs.get(input.index);
+                    if (inputRun.needed.decrementAndGet() == 0) {
+                        inputRun.result.cancel(true);
+                    }
+                }
+            }
+            if (remaining.decrementAndGet() == 0) {
+                Throwable cause = failure.get();
+                if (cause != null) {
+                    completion.completeExceptionally(cause);
+                } else if (hasCancelled()) {
+                    completion.completeExceptionally(new CancellationException("Workflow execution cancelled"));
+                } else {
+                    completion.complete(null);
+                }
+            }
+        }
+
+        private boolean hasCancelled() {
+            for (Run<?> run : runs) {
+                if (run.result.isCancelled()) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * The state of a node in one execution.
+     */
+    private final class Run<T> {
+
+        private final Node<T> node;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        // the inputs not completed yet
+        private final AtomicInteger pending;
+        // the dependents that may still run, a node nothing depends on is always needed
+        private final AtomicInteger needed;
+        // written before the result is completed, read after
+        private volatile Run<?> trigger;
+        private volatile boolean started;
+        private volatile long startNanos;
+        private volatile long endNanos;
+
+        private Run(Node<T> node) {
+            this.node = node;
+            this.pending = new AtomicInteger(node.inputs.size());
+            List<Node<?>> next = dependents.get(node.index);
+            this.needed = new AtomicInteger(next.isEmpty() ? -1 : next.size());
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<Node<?>> nodes = new ArrayList<>();
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a node without inputs, started as soon as the execution starts.
+         */
+        public <T> Node<T> node(String name, Supplier<? extends CompletableFuture<T>> task) {
+            return node(name, inputs -> task.get());
+        }
+
+        /**
+         * Adds a node started with the result of its input.
+         */
+        public <A, T> Node<T> node(String name, Node<A> input,
+                                   Function<? super A, ? extends CompletableFuture<T>> task) {
+            return node(name, inputs -> task.apply(inputs.get(input)), input);
+        }
+
+        /**
+         * Adds a node started with the results of its two inputs, once both have completed.
+         */
+        public <A, B, T> Node<T> node(String name, Node<A> first, Node<B> second,
+                                      BiFunction<? super A, ? super B, ? extends CompletableFuture<T>> task) {
+            return node(name, inputs -> task.apply(inputs.get(first), inputs.get(second)), first, second);
+        }
+
+        /**
+         * Adds a node started once all its inputs have completed, which it reads from the {@link Inputs}.
+         * @param inputs nodes added to this builder before
+         */
+        public <T> Node<T> node(String name, Function<Inputs, ? extends CompletableFuture<T>> task,
+                                Node<?>... inputs) {
+            List<Node<?>> distinct = new ArrayList<>(inputs.length);
+            for (Node<?> input : inputs) {
+                if (input.owner != this) {
+                    throw new IllegalArgumentException(input + " was added to another workflow");
+                }
+                if (!distinct.contains(input)) {
+                    distinct.add(input);
+                }
+            }
+            Node<T> node = new Node<>(this, nodes.size(), name, Collections.unmodifiableList(distinct), task);
+            nodes.add(node);
+
+            return node;
+        }
+
+        /**
+         * @param ticker the time source of the run times and the critical path, in nanoseconds
+         */
+        public Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public Workflow build() {
+            if (nodes.isEmpty()) {
+                throw new IllegalStateException("Workflow has no nodes");
+            }
+            return new Workflow(this);
+        }
+    }
+}
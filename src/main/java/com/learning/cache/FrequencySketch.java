@@ -0,0 +1,110 @@
+package com.learning.cache;
+
+/**
+ * Count-min sketch estimating how often keys were accessed recently, the admission filter of TinyLFU. Every key maps
+ * to one 4-bit counter in each of four rows, its frequency is the minimum of them, so the estimate may be too high
+ * but never too low. Sixteen counters are packed into a long, which keeps the sketch at 8 bytes per cached entry. The
+ * table is sized from the number of entries, up to 2^24 longs (128 MiB), and grows with the cache when that number
+ * isn't known up front; growing starts the history over.
+ * <p>
+ * When the number of increments reaches ten times the table size all counters are halved. This ages the history,
+ * so keys that used to be popular give way to the ones popular now.
+ * <p>
+ * Not thread-safe, the cache only touches it under its eviction lock.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private static final int MINIMUM_LENGTH = 8;
+    private static final int MAXIMUM_LENGTH = 1 << 24;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * @param expectedEntries the expected number of cached entries, 0 if it isn't known
+     */
+    FrequencySketch(long expectedEntries) {
+        resize(lengthFor(expectedEntries));
+    }
+
+    /**
+     * Grows the table if the cache holds more entries than it's sized for.
+     */
+    void ensureCapacity(long entries) {
+        int length = lengthFor(entries);
+        if (length > table.length) {
+            resize(length);
+        }
+    }
+
+    /**
+     * @return the estimated number of recent accesses, at most 15
+     */
+    int frequency(int hash) {
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < 4; ++row) {
+            int index = indexOf(hash, row);
+            int count = (int) ((table[index] >>> ((start + row) << 2)) & 0xF);
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    void increment(int hash) {
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int row = 0; row < 4; ++row) {
+            int index = indexOf(hash, row);
+            int offset = (start + row) << 2;
+            long mask = 0xFL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void resize(int length) {
+        table = new long[length];
+        tableMask = length - 1;
+        // at most 10 * 2^24, far from overflowing
+        sampleSize = 10 * length;
+        size = 0;
+    }
+
+    /**
+     * @return the power of two closest above the entries, within the minimum and maximum length
+     */
+    private static int lengthFor(long entries) {
+        int length = (int) Math.min(Math.max(entries, MINIMUM_LENGTH), MAXIMUM_LENGTH);
+
+        return Integer.highestOneBit(length - 1) << 1;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; ++i) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+
+        return (int) h & tableMask;
+    }
+}
@@ -0,0 +1,192 @@
+package com.learning.cache;
+
+import com.learning.async.Timeout;
+import com.learning.async.Timeouts;
+import com.learning.async.Timer;
+import com.learning.util.ThreadUtils;
+import com.learning.util.TimeSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Refresh-ahead cache of a single, rarely changing value. Only the first request waits for the source; after every
+ * successful load a refresh is scheduled {@code refreshAfter} later on a timer, so readers keep getting the current
+ * value instantly and never wait for a refresh.
+ * <p>
+ * A failed refresh keeps the old value and is retried after a quarter of the refresh period. The old value is served
+ * until it's {@code maxStaleness} old; after that requests wait for a new load again, and fail if it fails. Background
+ * retries stop at that point too, the next request starts loading again.
+ * <p>
+ * Concurrent loads are coalesced, and every caller gets its own future, so cancelling it doesn't affect the others.
+ */
+public class RefreshingValue<V> {
+
+    private final Supplier<? extends CompletableFuture<V>> source;
+    private final long refreshAfterNanos;
+    private final long maxStalenessNanos;
+    private final Timer timer;
+    private final TimeSource timeSource;
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder staleReads = new LongAdder();
+
+    private volatile Loaded<V> current;
+    private CompletableFuture<V> loading;
+    private Timeout refresh;
+    private boolean closed;
+
+    /**
+     * Measures the age on the time source of {@link ThreadUtils}, with the timer of {@link Timeouts} for it.
+     * @param source loads the value
+     * @param refreshAfter how long after a load the value is refreshed
+     * @param maxStaleness how long after a load the value may be served while refreshes fail, not less than
+     *                     {@code refreshAfter}
+     */
+    public RefreshingValue(Supplier<? extends CompletableFuture<V>> source, long refreshAfter, long maxStaleness,
+                           TimeUnit unit) {
+        this(source, refreshAfter, maxStaleness, unit, ThreadUtils.getTimeSource());
+    }
+
+    private RefreshingValue(Supplier<? extends CompletableFuture<V>> source, long refreshAfter, long maxStaleness,
+                            TimeUnit unit, TimeSource timeSource) {
+        this(source, refreshAfter, maxStaleness, unit, Timeouts.getTimer(timeSource), timeSource);
+    }
+
+    /**
+     * @param timer starts the refreshes, the source is then called on the timer's thread, so it must not block
+     * @param timeSource the clock of the value's age, it has to be the timer's clock as well
+     */
+    public RefreshingValue(Supplier<? extends CompletableFuture<V>> source, long refreshAfter, long maxStaleness,
+                           TimeUnit unit, Timer timer, TimeSource timeSource) {
+        if (refreshAfter <= 0 || maxStaleness < refreshAfter) {
+            throw new IllegalArgumentException("Refresh period must be positive and not exceed max staleness: "
+                    + refreshAfter + ", " + maxStaleness);
+        }
+        this.source = source;
+        this.refreshAfterNanos = unit.toNanos(refreshAfter);
+        this.maxStalenessNanos = unit.toNanos(maxStaleness);
+        this.timer = timer;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * @return a completed future of the value if it's fresh enough, otherwise the future of a load
+     */
+    public CompletableFuture<V> get() {
+        Loaded<V> loaded = current;
+        if (loaded != null) {
+            long age = timeSource.nanoTime() - loaded.loadedAt;
+            if (age < maxStalenessNanos) {
+                if (age >= refreshAfterNanos) {
+                    staleReads.increment();
+                }
+                return CompletableFuture.completedFuture(loaded.value);
+            }
+        }
+
+        return load().thenApply(Function.identity());
+    }
+
+    /**
+     * Stops refreshing, the value is still served until it's too stale.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (refresh != null) {
+            refresh.cancel();
+        }
+    }
+
+    /**
+     * @return the number of loads started, the first one included
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return the number of loads that failed
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the number of reads served with a value due for refresh, because refreshes failed or lagged
+     */
+    public long getStaleReadCount() {
+        return staleReads.sum();
+    }
+
+    private synchronized CompletableFuture<V> load() {
+        if (loading != null) {
+            return loading;
+        }
+        loads.increment();
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        loading = flight;
+        CompletableFuture<V> result;
+        try {
+            result = source.get();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+
+        result.whenComplete((value, error) -> {
+            synchronized (this) {
+                loading = null;
+                if (error == null) {
+                    current = new Loaded<>(value, timeSource.nanoTime());
+                    schedule(refreshAfterNanos);
+                } else {
+                    failures.increment();
+                    Loaded<V> loaded = current;
+                    if (loaded != null && timeSource.nanoTime() - loaded.loadedAt < maxStalenessNanos) {
+                        schedule(Math.max(refreshAfterNanos / 4, 1));
+                    }
+                }
+            }
+            if (error != null) {
+                flight.completeExceptionally(error);
+            } else {
+                flight.complete(value);
+            }
+        });
+
+        return flight;
+    }
+
+    /**
+     * Called with the lock held.
+     */
+    private void schedule(long delayNanos) {
+        if (closed) {
+            return;
+        }
+        if (refresh != null) {
+            refresh.cancel();
+        }
+        try {
+            refresh = timer.newTimeout(this::load, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (IllegalStateException e) {
+            // the timer is stopped, the value is still served and loaded on demand
+            closed = true;
+        }
+    }
+
+    private static final class Loaded<V> {
+
+        private final V value;
+        private final long loadedAt;
+
+        private Loaded(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
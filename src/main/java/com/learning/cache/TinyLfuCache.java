@@ -0,0 +1,623 @@
+package com.learning.cache;
+
+import com.learning.util.Histogram;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded asynchronous loading cache with W-TinyLFU eviction. The cache holds the future of every value, so a miss
+ * starts one load and every concurrent request for the same key waits for the same load instead of loading it again.
+ * Each caller gets a future of its own, dependent on the cached one, so cancelling it or timing it out doesn't fail the
+ * entry for the others. Failed loads and loads of null are removed, nothing but values is cached.
+ * <p>
+ * New entries enter a small LRU window (1% of the capacity); entries pushed out of the window go to the main region, a
+ * segmented LRU of a probation and a protected segment (80% of the main region) where entries are promoted on access.
+ * When the cache is over its maximum weight, the window's newest evictee competes with the main region's LRU victim
+ * and the one a {@link FrequencySketch} saw less often recently is evicted. So a scan of one-off keys can't flush
+ * frequently used entries, while the window still gives new keys a chance to build up frequency.
+ * <p>
+ * Reads never block: entries live in a {@link ConcurrentHashMap}, and accesses are recorded into a lossy buffer that
+ * the eviction policy replays later. Writes are queued too. Whoever finds the eviction lock free drains both buffers
+ * and runs the policy, so the cache can briefly hold more than its maximum weight until the next drain.
+ * <p>
+ * Expired entries are treated as absent as soon as they expire, and removed from the least recently used end of the
+ * policy queues when the buffers are drained. Expiration counts from the completion of the load: an entry still
+ * loading never expires, so a load slower than the expiration is still shared by every caller.
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final double WINDOW_PERCENT = 0.01;
+    private static final double PROTECTED_PERCENT = 0.8;
+    private static final int READ_BUFFER_MAX = 256;
+    private static final int READ_DRAIN_THRESHOLD = 64;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final Function<? super K, ? extends CompletableFuture<V>> loader;
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maximumWeight;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final LongSupplier ticker;
+
+    private final Queue<Node<K, V>> readBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger readBufferSize = new AtomicInteger();
+    private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // the policy, guarded by the eviction lock
+    private final FrequencySketch sketch;
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> protectedQueue = new AccessOrderDeque<>();
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private long windowWeight;
+    private long protectedWeight;
+    private long weightedSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictionWeight = new LongAdder();
+    private final Histogram loadLatency = new Histogram();
+
+    private TinyLfuCache(Builder<K, V> builder, Function<? super K, ? extends CompletableFuture<V>> loader) {
+        this.loader = loader;
+        this.weigher = builder.weigher;
+        this.maximumWeight = builder.maximumWeight;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+        this.ticker = builder.ticker;
+        // a weighed cache can't know how many entries it will hold, its sketch grows with them instead
+        this.sketch = new FrequencySketch(builder.weighted ? 0 : maximumWeight);
+        this.windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_PERCENT));
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_PERCENT);
+    }
+
+    public static <K, V> Builder<K, V> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @return a future of the key's cached value, or of a load started now if there's none; cancelling it only gives
+     * up this caller's wait
+     */
+    public CompletableFuture<V> get(K key) {
+        long now = ticker.getAsLong();
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            if (!isExpired(node, now)) {
+                hits.increment();
+                afterRead(node, now);
+
+                return node.future.thenApply(Function.identity());
+            }
+            if (data.remove(key, node)) {
+                afterWrite(() -> evict(node));
+            }
+        }
+
+        Node<K, V> created = new Node<>(key, now);
+        Node<K, V> current = data.putIfAbsent(key, created);
+        if (current != null) {
+            // another caller started the load first, its load is shared
+            hits.increment();
+            afterRead(current, now);
+
+            return current.future.thenApply(Function.identity());
+        }
+
+        misses.increment();
+        // loaded first, so a value that's already known is weighed before the policy admits it
+        load(created);
+        afterWrite(() -> add(created));
+
+        return created.future.thenApply(Function.identity());
+    }
+
+    /**
+     * @return a future of the key's cached value, null if there's none
+     */
+    public CompletableFuture<V> getIfPresent(K key) {
+        long now = ticker.getAsLong();
+        Node<K, V> node = data.get(key);
+        if (node == null || isExpired(node, now)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        afterRead(node, now);
+
+        return node.future.thenApply(Function.identity());
+    }
+
+    /**
+     * Removes the key's entry, a load in progress still completes the futures already handed out.
+     */
+    public void invalidate(K key) {
+        Node<K, V> node = data.remove(key);
+        if (node != null) {
+            afterWrite(() -> remove(node));
+        }
+    }
+
+    /**
+     * Runs the pending maintenance right away: replays buffered reads and writes, evicts and expires entries.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of entries, including expired ones not removed yet
+     */
+    public long estimatedSize() {
+        return data.mappingCount();
+    }
+
+    /**
+     * @return the total weight of the entries as of the last maintenance
+     */
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return hits divided by requests, 1 if there were no requests
+     */
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long requests = hitCount + getMissCount();
+
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * @return the number of entries removed because of the size bound or expiration
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getEvictionWeight() {
+        return evictionWeight.sum();
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccesses.sum();
+    }
+
+    /**
+     * @return the number of loads that failed or loaded null
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * @return the time from starting a load to its completion, in nanoseconds
+     */
+    public Histogram getLoadLatency() {
+        return loadLatency;
+    }
+
+    private void load(Node<K, V> node) {
+        long start = System.nanoTime();
+        CompletableFuture<V> loading;
+        try {
+            loading = loader.apply(node.key);
+        } catch (RuntimeException e) {
+            loading = new CompletableFuture<>();
+            loading.completeExceptionally(e);
+        }
+
+        loading.whenComplete((value, error) -> {
+            loadLatency.record(System.nanoTime() - start);
+            if (error != null || value == null) {
+                loadFailures.increment();
+                if (data.remove(node.key, node)) {
+                    afterWrite(() -> remove(node));
+                }
+            } else {
+                loadSuccesses.increment();
+                long now = ticker.getAsLong();
+                node.writeTime = now;
+                node.accessTime = now;
+                int weight = weigher.weigh(node.key, value);
+                afterWrite(() -> updateWeight(node, weight));
+            }
+
+            if (error != null) {
+                node.future.completeExceptionally(error);
+            } else {
+                node.future.complete(value);
+            }
+        });
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        if (!node.future.isDone()) {
+            return false;
+        }
+
+        return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    /**
+     * Records the access in the read buffer, or drops it when the buffer is full: losing a few accesses only makes
+     * the policy slightly less precise, and keeps readers from ever waiting for it.
+     */
+    private void afterRead(Node<K, V> node, long now) {
+        node.accessTime = now;
+        int size = readBufferSize.incrementAndGet();
+        if (size <= READ_BUFFER_MAX) {
+            readBuffer.offer(node);
+        } else {
+            readBufferSize.decrementAndGet();
+        }
+        if (size >= READ_DRAIN_THRESHOLD) {
+            tryDrain();
+        }
+    }
+
+    /**
+     * Queues the policy update, writes are never dropped.
+     */
+    private void afterWrite(Runnable task) {
+        writeBuffer.offer(task);
+        tryDrain();
+    }
+
+    /**
+     * Drains the buffers if no one else does. The lock holder checks the write buffer again after unlocking, so a task
+     * queued while it was draining isn't left behind.
+     */
+    private void tryDrain() {
+        while (evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+            if (writeBuffer.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private void maintenance() {
+        Node<K, V> read;
+        while ((read = readBuffer.poll()) != null) {
+            readBufferSize.decrementAndGet();
+            onAccess(read);
+        }
+        Runnable write;
+        while ((write = writeBuffer.poll()) != null) {
+            write.run();
+        }
+        expire(ticker.getAsLong());
+        evict();
+    }
+
+    private void add(Node<K, V> node) {
+        if (node.queue == Node.RETIRED) {
+            return;
+        }
+        node.queue = Node.WINDOW;
+        window.addLast(node);
+        windowWeight += node.weight;
+        weightedSize += node.weight;
+        sketch.ensureCapacity(data.size());
+        sketch.increment(hash(node.key));
+    }
+
+    private void updateWeight(Node<K, V> node, int weight) {
+        int delta = weight - node.weight;
+        node.weight = weight;
+        if (node.queue == Node.WINDOW) {
+            windowWeight += delta;
+        } else if (node.queue == Node.PROTECTED) {
+            protectedWeight += delta;
+        }
+        if (node.queue != Node.RETIRED && node.queue != Node.NEW) {
+            weightedSize += delta;
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.queue == Node.RETIRED) {
+            return;
+        }
+        sketch.increment(hash(node.key));
+        if (node.queue == Node.WINDOW) {
+            window.moveToBack(node);
+        } else if (node.queue == Node.PROBATION) {
+            probation.remove(node);
+            node.queue = Node.PROTECTED;
+            protectedQueue.addLast(node);
+            protectedWeight += node.weight;
+            while (protectedWeight > protectedMaximum && protectedQueue.peekFirst() != node) {
+                Node<K, V> demoted = protectedQueue.pollFirst();
+                protectedWeight -= demoted.weight;
+                demoted.queue = Node.PROBATION;
+                probation.addLast(demoted);
+            }
+        } else if (node.queue == Node.PROTECTED) {
+            protectedQueue.moveToBack(node);
+        }
+    }
+
+    private void expire(long now) {
+        if (expireAfterWriteNanos <= 0 && expireAfterAccessNanos <= 0) {
+            return;
+        }
+        expire(window, now);
+        expire(probation, now);
+        expire(protectedQueue, now);
+    }
+
+    private void expire(AccessOrderDeque<K, V> queue, long now) {
+        Node<K, V> node;
+        while ((node = queue.peekFirst()) != null && isExpired(node, now)) {
+            data.remove(node.key, node);
+            evict(node);
+        }
+    }
+
+    /**
+     * Moves the window's overflow to probation, then evicts until the cache fits its maximum weight. The admission
+     * candidate is the newest probation entry, the victim the oldest; the more frequent one stays.
+     */
+    private void evict() {
+        while (windowWeight > windowMaximum) {
+            Node<K, V> node = window.pollFirst();
+            windowWeight -= node.weight;
+            node.queue = Node.PROBATION;
+            probation.addLast(node);
+        }
+
+        while (weightedSize > maximumWeight) {
+            Node<K, V> victim = probation.peekFirst();
+            Node<K, V> candidate = probation.peekLast();
+            if (victim == null) {
+                victim = protectedQueue.peekFirst() != null ? protectedQueue.peekFirst() : window.peekFirst();
+            } else if (candidate != victim
+                    && sketch.frequency(hash(candidate.key)) <= sketch.frequency(hash(victim.key))) {
+                victim = candidate;
+            }
+            data.remove(victim.key, victim);
+            evict(victim);
+        }
+    }
+
+    private void evict(Node<K, V> node) {
+        if (node.queue != Node.RETIRED && node.queue != Node.NEW) {
+            evictions.increment();
+            evictionWeight.add(node.weight);
+        }
+        remove(node);
+    }
+
+    /**
+     * Unlinks the node from the policy. A node removed before its addition was replayed is only marked, so the
+     * pending addition skips it.
+     */
+    private void remove(Node<K, V> node) {
+        if (node.queue == Node.WINDOW) {
+            window.remove(node);
+            windowWeight -= node.weight;
+        } else if (node.queue == Node.PROBATION) {
+            probation.remove(node);
+        } else if (node.queue == Node.PROTECTED) {
+            protectedQueue.remove(node);
+            protectedWeight -= node.weight;
+        }
+        if (node.queue != Node.RETIRED && node.queue != Node.NEW) {
+            weightedSize -= node.weight;
+        }
+        node.queue = Node.RETIRED;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Computes the weight of a loaded value, relative to the maximum weight of the cache.
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+
+        /**
+         * @return a non-negative weight
+         */
+        int weigh(K key, V value);
+    }
+
+    public static final class Builder<K, V> {
+
+        private long maximumWeight;
+        private boolean weighted;
+        private Weigher<? super K, ? super V> weigher = (key, value) -> 1;
+        private long expireAfterWriteNanos;
+        private long expireAfterAccessNanos;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * Bounds the number of entries.
+         */
+        public Builder<K, V> maximumSize(long maximumSize) {
+            maximumWeight(maximumSize, (key, value) -> 1);
+            this.weighted = false;
+            return this;
+        }
+
+        /**
+         * Bounds the total weight of the entries, a loading entry weighs 1 until its value is known.
+         */
+        public Builder<K, V> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+            if (maximumWeight <= 0) {
+                throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+            }
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            this.weighted = true;
+            return this;
+        }
+
+        /**
+         * Expires entries the given time after they were loaded.
+         */
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Expires entries the given time after they were last read.
+         */
+        public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+            this.expireAfterAccessNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * @param ticker the time source of expiration, in nanoseconds
+         */
+        public Builder<K, V> ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * @param loader starts loading the value of a missing key
+         * @throws IllegalStateException if neither the maximum size nor the maximum weight was set
+         */
+        public TinyLfuCache<K, V> build(Function<? super K, ? extends CompletableFuture<V>> loader) {
+            if (maximumWeight == 0) {
+                throw new IllegalStateException("The cache needs a maximum size or a maximum weight");
+            }
+            return new TinyLfuCache<>(this, loader);
+        }
+    }
+
+    private static final class Node<K, V> {
+
+        private static final int NEW = 0;
+        private static final int WINDOW = 1;
+        private static final int PROBATION = 2;
+        private static final int PROTECTED = 3;
+        private static final int RETIRED = 4;
+
+        private final K key;
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        // set before the future completes
+        private volatile long writeTime;
+        private volatile long accessTime;
+
+        // guarded by the eviction lock
+        private int weight = 1;
+        private int queue = NEW;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, long now) {
+            this.key = key;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+
+    /**
+     * Intrusive doubly-linked list of nodes, least recently used first.
+     */
+    private static final class AccessOrderDeque<K, V> {
+
+        private Node<K, V> first;
+        private Node<K, V> last;
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        Node<K, V> peekLast() {
+            return last;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = first;
+            if (node != null) {
+                remove(node);
+            }
+
+            return node;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.learning.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link User} whose balance can be changed concurrently without locks. The balance is a fixed-point number of minor
+ * units (see {@link Money}) updated by compare-and-set, so {@link #addMoney}, {@link #compareAndSetMoney} and
+ * {@link #tryDebit} never lose an update and never let a debit overdraw the account.
+ * <p>
+ * An account that takes massive fan-in of credits, like a fee account, can be created {@link #striped}: credits then
+ * go to one of several padded cells picked by the crediting thread, the way {@link java.util.concurrent.atomic.LongAdder}
+ * spreads contention, instead of all threads spinning on one word. Reading the balance sums the cells, and debits and
+ * compare-and-set first fold the cells into the base balance, so they stay exact.
+ */
+public class AtomicUser extends User {
+
+    /**
+     * Longs between two cells, keeps every cell on its own 64 byte cache line.
+     */
+    private static final int PADDING = 8;
+    private static final int MAX_CELLS = 64;
+
+    private final AtomicLong balance;
+    private final AtomicLongArray cells;
+    private final int cellMask;
+
+    public AtomicUser(long id, double creditRating, double money) {
+        this(id, creditRating, money, 0);
+    }
+
+    private AtomicUser(long id, double creditRating, double money, int cells) {
+        super(id, creditRating, 0);
+        this.balance = new AtomicLong(Money.toMinorUnits(money));
+        this.cells = cells == 0 ? null : new AtomicLongArray(cells * PADDING);
+        this.cellMask = cells - 1;
+    }
+
+    /**
+     * Creates an account tuned for many concurrent credits, with two cells per available processor.
+     */
+    public static AtomicUser striped(long id, double creditRating, double money) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int cells = Math.min(MAX_CELLS, Integer.highestOneBit(Math.max(processors * 2 - 1, 1)) << 1);
+
+        return new AtomicUser(id, creditRating, money, cells);
+    }
+
+    public boolean isStriped() {
+        return cells != null;
+    }
+
+    /**
+     * @return the current balance, in a striped account a sum that may miss credits made while it's computed
+     */
+    public Money getBalance() {
+        return Money.ofMinorUnits(balanceInMinorUnits());
+    }
+
+    @Override
+    public double getMoney() {
+        return Money.toDouble(balanceInMinorUnits());
+    }
+
+    /**
+     * Replaces the balance. Credits that land concurrently are applied either before or after the replacement.
+     */
+    @Override
+    public void setMoney(double money) {
+        long value = Money.toMinorUnits(money);
+        if (cells != null) {
+            for (int i = 0; i < cells.length(); i += PADDING) {
+                cells.set(i, 0);
+            }
+        }
+        balance.set(value);
+    }
+
+    /**
+     * Adds the amount, negative amounts are withdrawn unconditionally; use {@link #tryDebit} to keep the balance
+     * from going below zero.
+     */
+    public void addMoney(double amount) {
+        long units = Money.toMinorUnits(amount);
+        if (cells != null && units > 0) {
+            cells.getAndAdd(cell(), units);
+        } else {
+            balance.getAndAdd(units);
+        }
+    }
+
+    /**
+     * Sets the balance to the update if it's exactly the expected one.
+     * @return true if the balance was updated
+     */
+    public boolean compareAndSetMoney(double expected, double update) {
+        long expectedUnits = Money.toMinorUnits(expected);
+        long updateUnits = Money.toMinorUnits(update);
+        fold();
+
+        return balance.compareAndSet(expectedUnits, updateUnits);
+    }
+
+    /**
+     * Withdraws the amount if the balance covers it.
+     * @param amount a non-negative amount
+     * @return true if the amount was withdrawn, false if the balance is lower
+     */
+    public boolean tryDebit(double amount) {
+        long units = Money.toMinorUnits(amount);
+        if (units < 0) {
+            throw new IllegalArgumentException("Debit amount must not be negative: " + amount);
+        }
+        fold();
+
+        long current;
+        do {
+            current = balance.get();
+            if (current < units) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - units));
+
+        return true;
+    }
+
+    private long balanceInMinorUnits() {
+        long sum = balance.get();
+        if (cells != null) {
+            for (int i = 0; i < cells.length(); i += PADDING) {
+                sum += cells.get(i);
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Moves the credits accumulated in the cells to the base balance. Every cell is taken with getAndSet, so a credit
+     * racing with the fold is either moved or stays in its cell, it's never lost.
+     */
+    private void fold() {
+        if (cells == null) {
+            return;
+        }
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            if (cells.get(i) != 0) {
+                balance.getAndAdd(cells.getAndSet(i, 0));
+            }
+        }
+    }
+
+    private int cell() {
+        long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+
+        return ((int) (hash >>> 32) & cellMask) * PADDING;
+    }
+}
@@ -0,0 +1,121 @@
+package com.learning.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amount of money kept as a {@code long} number of minor units (cents), so sums and differences are exact, unlike
+ * {@code double} arithmetic on balances. Arithmetic throws {@link ArithmeticException} on overflow instead of
+ * silently wrapping.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+    public static final long MINOR_UNITS = 100;
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Largest magnitude in minor units up to which every whole number is a double, 2^53.
+     */
+    private static final double MAX_EXACT = 9007199254740992.0;
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * @param amount an amount in major units, rounded to the nearest minor unit
+     */
+    public static Money of(double amount) {
+        return ofMinorUnits(toMinorUnits(amount));
+    }
+
+    /**
+     * @param amount a decimal amount in major units, e.g. "10000.00", rounded half-even to the nearest minor unit
+     */
+    public static Money parse(String amount) {
+        return ofMinorUnits(new BigDecimal(amount).setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue()
+                .longValueExact());
+    }
+
+    /**
+     * Converts an amount in major units to minor units, rounded to the nearest one. Scaling a double with at most two
+     * decimals lands within a rounding error of the whole number it represents, e.g. 0.29 scales to 28.999999999999996,
+     * so rounding recovers it exactly.
+     * @throws ArithmeticException if the amount isn't finite or is too large to be represented exactly
+     */
+    public static long toMinorUnits(double amount) {
+        double scaled = amount * MINOR_UNITS;
+        if (!(Math.abs(scaled) <= MAX_EXACT)) {
+            throw new ArithmeticException("Amount can't be represented in minor units exactly: " + amount);
+        }
+
+        return Math.round(scaled);
+    }
+
+    public static double toDouble(long minorUnits) {
+        return (double) minorUnits / MINOR_UNITS;
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public double toDouble() {
+        return toDouble(minorUnits);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money times(long multiplier) {
+        return ofMinorUnits(Math.multiplyExact(minorUnits, multiplier));
+    }
+
+    public Money negate() {
+        return ofMinorUnits(Math.negateExact(minorUnits));
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || other instanceof Money && ((Money) other).minorUnits == minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -1,29 +1,171 @@
 package com.learning.service;
 
+import com.learning.async.BoundedExecutor;
+import com.learning.async.CircuitBreaker;
+import com.learning.async.ConcurrencyLimiter;
+import com.learning.async.RateLimiter;
+import com.learning.async.Retry;
+import com.learning.async.SingleFlight;
+import com.learning.cache.RefreshingValue;
 import com.learning.model.User;
-import com.learning.util.ThreadUtils;
+import com.learning.util.LatencyInjector;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class CreditService {
 
-    public static CompletableFuture<Double> getUserCreditRating(User user) {
-        return CompletableFuture.supplyAsync(() -> {
-            System.out.println("CreditService.getUserCreditRating() execution");
+    private static final long INTEREST_RATE_REFRESH_MINUTES = 1;
+    private static final long INTEREST_RATE_MAX_STALENESS_MINUTES = 10;
+
+    private static final int THREADS = 8;
+    private static final int QUEUE_CAPACITY = 128;
+
+    /**
+     * Runs the blocking backend calls, so a slow credit backend can't starve the common pool and the other services.
+     */
+    private static volatile Executor executor = new BoundedExecutor("credit-service", THREADS, QUEUE_CAPACITY,
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private static volatile LatencyInjector latency = LatencyInjector.constant(3, TimeUnit.SECONDS);
+
+    private static final SingleFlight<Long, Double> CREDIT_RATING_FLIGHTS = new SingleFlight<>();
+
+    private static volatile Retry retry;
 
-            ThreadUtils.simulateLongRunningJob(3);
+    private static volatile CircuitBreaker circuitBreaker;
+
+    private static volatile RateLimiter rateLimiter;
+
+    private static volatile ConcurrencyLimiter concurrencyLimiter;
+
+    private static volatile RefreshingValue<Double> interestRate = new RefreshingValue<>(
+            CreditService::fetchInterestRate, INTEREST_RATE_REFRESH_MINUTES, INTEREST_RATE_MAX_STALENESS_MINUTES,
+            TimeUnit.MINUTES);
+
+    /**
+     * Concurrent requests for the rating of the same user share one backend call. While a retry policy is set, failed
+     * backend calls are retried by it, and the sharing requests wait for the retries. While a circuit breaker is set,
+     * every attempt goes through it.
+     */
+    public static CompletableFuture<Double> getUserCreditRating(User user) {
+        return CREDIT_RATING_FLIGHTS.execute(user.getId(), () -> {
+            Supplier<CompletableFuture<Double>> call = () -> guarded(() -> SimulatedBackend.call(
+                    "CreditService.getUserCreditRating()", latency, () -> getCreditRating(user), executor));
+            Retry policy = retry;
 
-            return getCreditRating(user);
+            return policy != null ? policy.call(call) : call.get();
         });
     }
 
+    /**
+     * The rate changes rarely, so it's cached and refreshed ahead in the background: only the first request waits for
+     * the backend, later ones get the current rate right away. If refreshes fail, the last rate is served for up to
+     * 10 minutes.
+     */
     public static CompletableFuture<Double> getInterestRate() {
-        return CompletableFuture.supplyAsync(() -> {
-            System.out.println("CreditService.getInterestRate() execution");
+        return interestRate.get();
+    }
 
-            ThreadUtils.simulateLongRunningJob(3);
+    /**
+     * Replaces the interest rate cache with one using the given periods, the next request loads the rate again.
+     * @param refreshAfter how long after a load the rate is refreshed
+     * @param maxStaleness how long the last rate is served while refreshes fail
+     * @return the cache, e.g. to read how many refreshes failed
+     */
+    public static RefreshingValue<Double> refreshInterestRate(long refreshAfter, long maxStaleness, TimeUnit unit) {
+        RefreshingValue<Double> rate = new RefreshingValue<>(
+                CreditService::fetchInterestRate, refreshAfter, maxStaleness, unit);
+        interestRate.close();
+        interestRate = rate;
 
-            return 13.0;
-        });
+        return rate;
+    }
+
+    /**
+     * Makes {@link #getUserCreditRating(User)} retry failed backend calls with the given policy, null makes it fail
+     * on the first failure again, which is the default.
+     */
+    public static void setRetry(Retry retry) {
+        CreditService.retry = retry;
+    }
+
+    public static Retry getRetry() {
+        return retry;
+    }
+
+    /**
+     * Puts a circuit breaker in front of the credit backend calls, null removes it, which is the default. While the
+     * circuit is open, calls fail right away with a {@link com.learning.async.CircuitBreakerOpenException}.
+     */
+    public static void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        CreditService.circuitBreaker = circuitBreaker;
+    }
+
+    public static CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Caps the rate of the credit backend calls, null removes the cap, which is the default. Calls beyond the rate wait
+     * for a permit without holding a thread.
+     */
+    public static void setRateLimiter(RateLimiter rateLimiter) {
+        CreditService.rateLimiter = rateLimiter;
+    }
+
+    public static RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Limits the credit backend calls in flight with an adaptive limit, null removes the limit, which is the default.
+     * Calls beyond the limit are queued or shed by the limiter.
+     */
+    public static void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        CreditService.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public static ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Replaces the executor of the backend calls. By default it's a {@link BoundedExecutor} of 8 threads and 128
+     * queued calls that fails calls beyond that with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    public static void setExecutor(Executor executor) {
+        CreditService.executor = executor;
+    }
+
+    public static Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Replaces the latency and error rate of the simulated backend calls, by default every call takes 3 seconds and
+     * succeeds.
+     */
+    public static void setLatency(LatencyInjector latency) {
+        CreditService.latency = latency;
+    }
+
+    public static LatencyInjector getLatency() {
+        return latency;
+    }
+
+    private static CompletableFuture<Double> fetchInterestRate() {
+        return guarded(() -> SimulatedBackend.call("CreditService.getInterestRate()", latency, () -> 13.0, executor));
+    }
+
+    /**
+     * Makes the backend call through the circuit breaker, the rate limiter and the concurrency limiter, if they are
+     * set.
+     */
+    private static <T> CompletableFuture<T> guarded(Supplier<CompletableFuture<T>> call) {
+        return Guards.call(call, rateLimiter, concurrencyLimiter, circuitBreaker);
     }
 
     private static double getCreditRating(final User user) {
@@ -0,0 +1,73 @@
+package com.learning.service;
+
+import com.learning.async.CircuitBreaker;
+import com.learning.async.ConcurrencyLimiter;
+import com.learning.async.Futures;
+import com.learning.async.RateLimiter;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The guards the services put around their backend calls, in the order a call passes them: the circuit breaker, the
+ * rate limiter and the concurrency limiter. Each one is optional.
+ * <p>
+ * The breaker comes first, so an open circuit fails calls right away, without making them wait for a rate permit and
+ * spend it. The wait for the permit counts toward the duration the breaker measures, so a rate far below the load
+ * can make calls slow. Completing or cancelling the returned future, e.g. by a timeout or as a hedge loser, reaches
+ * every guard the call has passed and the backend call itself.
+ */
+final class Guards {
+
+    private Guards() {
+    }
+
+    /**
+     * Makes the backend call through the guards that are set, a null guard is skipped.
+     */
+    static <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call, RateLimiter rateLimiter,
+                                         ConcurrencyLimiter concurrencyLimiter, CircuitBreaker circuitBreaker) {
+        Supplier<CompletableFuture<T>> limited = concurrencyLimiter != null
+                ? () -> concurrencyLimiter.call(call)
+                : call;
+        Supplier<CompletableFuture<T>> throttled = rateLimiter != null ? () -> throttle(rateLimiter, limited) : limited;
+
+        return circuitBreaker != null ? circuitBreaker.call(throttled) : throttled.get();
+    }
+
+    /**
+     * Makes the call once a rate permit is available.
+     * @return a future completed like the call's, completing it first stops the wait for the permit or cancels the call
+     */
+    private static <T> CompletableFuture<T> throttle(RateLimiter rateLimiter, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Void> permit = rateLimiter.acquireAsync();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        permit.whenComplete((ignored, permitError) -> {
+            if (permitError != null) {
+                result.completeExceptionally(permitError);
+                return;
+            }
+            // the caller gave up during the wait
+            if (result.isDone()) {
+                return;
+            }
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                future = Futures.failed(e);
+            }
+            CompletableFuture<T> made = future;
+            made.whenComplete((value, error) -> {
+                if (error == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            });
+            result.whenComplete((value, error) -> made.cancel(true));
+        });
+        result.whenComplete((value, error) -> permit.cancel(true));
+
+        return result;
+    }
+}
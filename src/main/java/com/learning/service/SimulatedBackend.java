@@ -0,0 +1,84 @@
+package com.learning.service;
+
+import com.learning.async.Futures;
+import com.learning.util.LatencyInjector;
+import com.learning.util.ThreadUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The simulated backend behind {@link UserService} and {@link CreditService}: every backend call waits for a latency
+ * picked by the service's {@link LatencyInjector}, 3 seconds by default, and then produces its result or an injected
+ * failure. How the wait is simulated is a switch shared by both services.
+ */
+public final class SimulatedBackend {
+
+    /**
+     * How a backend call waits.
+     */
+    public enum Mode {
+
+        /**
+         * A service thread sleeps for the whole call, so concurrent calls are capped by the service's thread count.
+         */
+        BLOCKING,
+
+        /**
+         * The call waits on a shared timer without holding any thread, only the result is computed on the service's
+         * executor. Thousands of concurrent calls cost no threads, e.g. for load tests.
+         */
+        NON_BLOCKING
+    }
+
+    private static volatile Mode mode = Mode.BLOCKING;
+
+    private SimulatedBackend() {
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    public static void setMode(Mode mode) {
+        SimulatedBackend.mode = mode;
+    }
+
+    /**
+     * @param name the call, printed when it's executed
+     * @param latency decides how long the call takes and whether it fails with a {@link SimulatedBackendException}
+     * @param result computes the result once the time is up
+     * @param executor the service's executor, a rejected call fails the returned future
+     */
+    static <T> CompletableFuture<T> call(String name, LatencyInjector latency, Supplier<T> result,
+                                         Executor executor) {
+        LatencyInjector.Decision decision = latency.next();
+        Supplier<T> outcome = () -> {
+            if (decision.isFailed()) {
+                throw new SimulatedBackendException(name + " failed");
+            }
+
+            return result.get();
+        };
+
+        if (mode == Mode.NON_BLOCKING) {
+            System.out.println(name + " execution");
+
+            CompletableFuture<Void> wait = ThreadUtils.delay(decision.getLatencyNanos(), TimeUnit.NANOSECONDS);
+            CompletableFuture<T> call = wait.thenCompose(ignored -> Futures.supplyAsync(outcome, executor));
+            // a call cancelled while waiting, e.g. the loser of a hedge, frees its timer slot and produces nothing
+            call.whenComplete((ignored, error) -> wait.cancel(false));
+
+            return call;
+        }
+
+        return Futures.supplyAsync(() -> {
+            System.out.println(name + " execution");
+
+            ThreadUtils.simulateLongRunningJob(decision.getLatencyNanos(), TimeUnit.NANOSECONDS);
+
+            return outcome.get();
+        }, executor);
+    }
+}
@@ -0,0 +1,13 @@
+package com.learning.service;
+
+/**
+ * Failure injected into a simulated backend call.
+ */
+public class SimulatedBackendException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SimulatedBackendException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,136 @@
+package com.learning.service;
+
+import com.learning.model.Money;
+import com.learning.model.User;
+import com.learning.store.UserView;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Moves money between two users atomically: the debit and the credit are both applied or neither is, and concurrent
+ * transfers never lose an update.
+ * <p>
+ * Accounts are guarded by a fixed array of lock stripes picked by the hash of the user id, so the number of locks
+ * doesn't grow with the number of accounts and every view of the same user maps to the same stripe. A transfer locks
+ * the two stripes of its accounts always in the order of their indexes. With one global order two transfers can never
+ * wait for each other in a cycle, which rules out the deadlock of naively locking "from" then "to". Transfers between
+ * accounts on different stripes don't contend at all, so throughput grows with the number of cores.
+ * <p>
+ * Balances are computed in minor units (see {@link Money}), so transfers don't accumulate rounding errors. Only
+ * transfers made through the same engine are serialized against each other.
+ */
+public class TransferEngine {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * Creates an engine with 64 stripes per available processor.
+     */
+    public TransferEngine() {
+        this(Runtime.getRuntime().availableProcessors() * 64);
+    }
+
+    /**
+     * @param stripes the number of lock stripes, rounded up to a power of two
+     */
+    public TransferEngine(int stripes) {
+        int count = Integer.highestOneBit(Math.max(stripes, 1) - 1) << 1;
+        this.stripes = new ReentrantLock[Math.max(count, 1)];
+        for (int i = 0; i < this.stripes.length; ++i) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = this.stripes.length - 1;
+    }
+
+    /**
+     * Transfers the amount if the payer has enough money. If the credit fails, the debit is undone before the error
+     * is passed on, so the money never disappears.
+     * @param amount a positive amount
+     * @return true if the money was moved, false if the payer's balance is lower than the amount
+     * @throws IllegalArgumentException if the amount isn't positive or both users are the same account
+     */
+    public boolean transfer(User from, User to, Money amount) {
+        return transfer(from.getId(), from::getMoney, to.getId(), to::getMoney, amount, (fromMoney, toMoney) -> {
+            double previous = from.getMoney();
+            from.setMoney(fromMoney);
+            try {
+                to.setMoney(toMoney);
+            } catch (RuntimeException e) {
+                from.setMoney(previous);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Transfers the amount between two stored users. Both balances change as one: a logged store writes them as one
+     * entry, and if it fails to commit neither balance changes.
+     * @see #transfer(User, User, Money)
+     */
+    public boolean transfer(UserView from, UserView to, Money amount) {
+        return transfer(from.getId(), from::getMoney, to.getId(), to::getMoney, amount,
+                (fromMoney, toMoney) -> from.setMoney(fromMoney, to, toMoney));
+    }
+
+    /**
+     * @return the number of lock stripes
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    private boolean transfer(long fromId, DoubleSupplier fromMoney, long toId, DoubleSupplier toMoney, Money amount,
+                             BalanceWriter writer) {
+        if (amount.isNegative() || amount.isZero()) {
+            throw new IllegalArgumentException("Transfer amount must be positive: " + amount);
+        }
+        if (fromId == toId) {
+            throw new IllegalArgumentException("Can't transfer money from user " + fromId + " to itself");
+        }
+
+        int fromStripe = stripe(fromId);
+        int toStripe = stripe(toId);
+        ReentrantLock first = stripes[Math.min(fromStripe, toStripe)];
+        ReentrantLock second = stripes[Math.max(fromStripe, toStripe)];
+
+        first.lock();
+        try {
+            if (second != first) {
+                second.lock();
+            }
+            try {
+                long fromBalance = Money.toMinorUnits(fromMoney.getAsDouble());
+                if (fromBalance < amount.getMinorUnits()) {
+                    return false;
+                }
+
+                long toBalance = Math.addExact(Money.toMinorUnits(toMoney.getAsDouble()), amount.getMinorUnits());
+                writer.write(Money.toDouble(fromBalance - amount.getMinorUnits()), Money.toDouble(toBalance));
+
+                return true;
+            } finally {
+                if (second != first) {
+                    second.unlock();
+                }
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    private int stripe(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    /**
+     * Writes the new balances of both sides of a transfer.
+     */
+    @FunctionalInterface
+    private interface BalanceWriter {
+
+        void write(double fromMoney, double toMoney);
+    }
+}
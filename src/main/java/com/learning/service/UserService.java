@@ -1,22 +1,253 @@
 package com.learning.service;
 
+import com.learning.async.BatchLoader;
+import com.learning.async.BoundedExecutor;
+import com.learning.async.CircuitBreaker;
+import com.learning.async.ConcurrencyLimiter;
+import com.learning.async.Hedger;
+import com.learning.async.RateLimiter;
+import com.learning.async.SingleFlight;
+import com.learning.cache.TinyLfuCache;
 import com.learning.model.User;
-import com.learning.util.ThreadUtils;
+import com.learning.store.UserStore;
+import com.learning.util.LatencyInjector;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class UserService {
 
+    private static final double DEFAULT_CREDIT_RATING = 100.0;
+    private static final double DEFAULT_MONEY = 10000.00;
+
+    private static final int THREADS = 16;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private static final double HEDGE_PERCENTILE = 95;
+    private static final long HEDGE_INITIAL_DELAY_SECONDS = 4;
+
+    private static final UserStore USERS = new UserStore();
+
+    private static final SingleFlight<Long, User> USER_FLIGHTS = new SingleFlight<>();
+
+    private static final Hedger USER_HEDGER = new Hedger(HEDGE_PERCENTILE, HEDGE_INITIAL_DELAY_SECONDS,
+            TimeUnit.SECONDS);
+
+    private static volatile BatchLoader<Long, User> batchLoader;
+
+    private static volatile TinyLfuCache<Long, User> cache;
+
+    private static volatile CircuitBreaker circuitBreaker;
+
+    private static volatile RateLimiter rateLimiter;
+
+    private static volatile ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Runs the blocking backend calls, so a slow backend can't starve the common pool and the other services.
+     */
+    private static volatile Executor executor = new BoundedExecutor("user-service", THREADS, QUEUE_CAPACITY,
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private static volatile LatencyInjector latency = LatencyInjector.constant(3, TimeUnit.SECONDS);
+
+    /**
+     * Fetches one user. Concurrent requests for the same id share one backend call. While batching is enabled the
+     * call joins the currently open batch instead of making its own backend round-trip. While caching is enabled a
+     * cached user is returned without any backend call.
+     */
     public static CompletableFuture<User> getUserDetails(long userId) {
-        return CompletableFuture.supplyAsync(() -> {
-            System.out.println("UserService.getUserDetails() execution");
+        TinyLfuCache<Long, User> users = cache;
+        if (users != null) {
+            return users.get(userId);
+        }
+
+        return fetchUserDetails(userId);
+    }
 
-            ThreadUtils.simulateLongRunningJob(3);
+    private static CompletableFuture<User> fetchUserDetails(long userId) {
+        BatchLoader<Long, User> loader = batchLoader;
+        if (loader != null) {
+            return loader.load(userId);
+        }
 
-            return getUser(userId);
-        });
+        return USER_FLIGHTS.execute(userId, () -> guarded(() -> SimulatedBackend.call(
+                "UserService.getUserDetails()", latency, () -> getUser(userId), executor)));
     }
 
+    /**
+     * Fetches one user with a hedged backend call: if the call hasn't answered within the 95th percentile of the
+     * latency, a second call is sent and the first answer wins, so a stalled call doesn't hold up the caller. The
+     * calls bypass the cache, batching and the sharing of concurrent requests, which would make the second call wait
+     * for the stalled one.
+     */
+    public static CompletableFuture<User> getUserDetailsHedged(long userId) {
+        return USER_HEDGER.call(() -> guarded(() -> SimulatedBackend.call("UserService.getUserDetails()", latency,
+                () -> getUser(userId), executor)));
+    }
+
+    /**
+     * @return the hedger of {@link #getUserDetailsHedged(long)}, e.g. to read how many calls it duplicated
+     */
+    public static Hedger getHedger() {
+        return USER_HEDGER;
+    }
+
+    /**
+     * Fetches many users with one backend round-trip, instead of one round-trip and one pool task per id.
+     * @param userIds the ids to fetch, duplicates are fetched once
+     * @return a future of the users by id, in the order of the given ids
+     */
+    public static CompletableFuture<Map<Long, User>> getUserDetails(long[] userIds) {
+        return guarded(() -> SimulatedBackend.call("UserService.getUserDetails(long[])", latency, () -> {
+            Map<Long, User> users = new LinkedHashMap<>();
+            for (long userId : userIds) {
+                users.computeIfAbsent(userId, UserService::getUser);
+            }
+
+            return users;
+        }, executor));
+    }
+
+    /**
+     * Makes {@link #getUserDetails(long)} collect the ids requested from all threads within a window into one
+     * {@link #getUserDetails(long[])} call. Concurrent requests for the same id within a window share one fetch.
+     * @param maxBatchSize the number of distinct ids that dispatches a batch immediately
+     * @param maxDelay how long the first request of a batch waits for others
+     * @return the loader, e.g. to read how many batches it dispatched
+     */
+    public static BatchLoader<Long, User> enableBatching(int maxBatchSize, long maxDelay, TimeUnit unit) {
+        BatchLoader<Long, User> loader = new BatchLoader<>(
+                userIds -> getUserDetails(userIds.stream().mapToLong(Long::longValue).toArray()),
+                maxBatchSize, maxDelay, unit);
+        batchLoader = loader;
+
+        return loader;
+    }
+
+    /**
+     * Makes {@link #getUserDetails(long)} fetch every user on its own again. Requests already waiting in a batch are
+     * dispatched right away.
+     */
+    public static void disableBatching() {
+        BatchLoader<Long, User> loader = batchLoader;
+        batchLoader = null;
+        if (loader != null) {
+            loader.flush();
+        }
+    }
+
+    /**
+     * Puts a bounded W-TinyLFU cache in front of {@link #getUserDetails(long)}. Misses are fetched the usual way,
+     * so batching still applies to them.
+     * @param maximumSize the number of users the cache holds
+     * @param expireAfterWrite how long a fetched user is served from the cache
+     * @return the cache, e.g. to read its hit rate
+     */
+    public static TinyLfuCache<Long, User> enableCaching(long maximumSize, long expireAfterWrite, TimeUnit unit) {
+        TinyLfuCache<Long, User> users = TinyLfuCache.<Long, User>newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, unit)
+                .build(UserService::fetchUserDetails);
+        cache = users;
+
+        return users;
+    }
+
+    /**
+     * Makes {@link #getUserDetails(long)} fetch every request from the backend again.
+     */
+    public static void disableCaching() {
+        cache = null;
+    }
+
+    /**
+     * Puts a circuit breaker in front of the user backend calls, null removes it, which is the default. While the
+     * circuit is open, calls fail right away with a {@link com.learning.async.CircuitBreakerOpenException}.
+     */
+    public static void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        UserService.circuitBreaker = circuitBreaker;
+    }
+
+    public static CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Caps the rate of the user backend calls, null removes the cap, which is the default. Calls beyond the rate wait
+     * for a permit without holding a thread.
+     */
+    public static void setRateLimiter(RateLimiter rateLimiter) {
+        UserService.rateLimiter = rateLimiter;
+    }
+
+    public static RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Limits the user backend calls in flight with an adaptive limit, null removes the limit, which is the default.
+     * Calls beyond the limit are queued or shed by the limiter.
+     */
+    public static void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        UserService.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public static ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Replaces the executor of the backend calls. By default it's a {@link BoundedExecutor} of 16 threads and 256
+     * queued calls that fails calls beyond that with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    public static void setExecutor(Executor executor) {
+        UserService.executor = executor;
+    }
+
+    public static Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Replaces the latency and error rate of the simulated backend calls, by default every call takes 3 seconds and
+     * succeeds.
+     */
+    public static void setLatency(LatencyInjector latency) {
+        UserService.latency = latency;
+    }
+
+    public static LatencyInjector getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the store the service reads its users from, e.g. to add users with other than the default values
+     */
+    public static UserStore getUserStore() {
+        return USERS;
+    }
+
+    /**
+     * Makes the backend call through the circuit breaker, the rate limiter and the concurrency limiter, if they are
+     * set.
+     */
+    private static <T> CompletableFuture<T> guarded(Supplier<CompletableFuture<T>> call) {
+        return Guards.call(call, rateLimiter, concurrencyLimiter, circuitBreaker);
+    }
+
+    /**
+     * Users are read from the columnar store into a copy the caller owns, changing it doesn't change the stored user.
+     * A user that isn't stored gets the default values without being added, so looking up arbitrary ids doesn't grow
+     * the store.
+     */
     private static User getUser(long userId) {
-        return new User(userId, 100.0, 10000.00);
+        User user = USERS.read(userId);
+
+        return user != null ? user : new User(userId, DEFAULT_CREDIT_RATING, DEFAULT_MONEY);
     }
 }
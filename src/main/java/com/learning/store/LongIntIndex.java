@@ -0,0 +1,248 @@
+package com.learning.store;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing hash index from a primitive {@code long} key to a non-negative {@code int} value (e.g. a record
+ * slot). Keys are never boxed and entries live in two flat arrays, so an entry costs 12 bytes divided by the load
+ * factor instead of a {@code Long}, a map node and a chain pointer.
+ * <p>
+ * Collisions are resolved by linear probing. Removed entries leave a tombstone behind so that probe sequences of
+ * other keys stay intact; tombstones are reused by later inserts and dropped when the table is rehashed.
+ * <p>
+ * Reads are lock-free in the common case: they run optimistically against a {@link StampedLock} and only fall back to
+ * the read lock if a write happened in the meantime. Writes are exclusive, so the index is meant for many concurrent
+ * readers and a single writer at a time.
+ */
+public class LongIntIndex {
+
+    /**
+     * Returned by {@link #get(long)} when the key is absent.
+     */
+    public static final int NO_VALUE = -1;
+
+    private static final int EMPTY = -1;
+    private static final int TOMBSTONE = -2;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private int size;
+    private int tombstones;
+
+    public LongIntIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of entries the index should hold without rehashing
+     */
+    public LongIntIndex(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return the value mapped to the key or {@link #NO_VALUE}
+     */
+    public int get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        int value = find(table, key);
+        if (lock.validate(stamp)) {
+            return value;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return find(table, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Maps the key to the value.
+     * @param value a non-negative value
+     * @return the previous value or {@link #NO_VALUE}
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must be non-negative: " + value);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int freeSlot = -1;
+            for (int i = index(key, t.mask), probes = 0; probes <= t.mask; i = (i + 1) & t.mask, ++probes) {
+                int current = t.values[i];
+                if (current == EMPTY) {
+                    if (freeSlot < 0) {
+                        freeSlot = i;
+                    }
+                    break;
+                }
+                if (current == TOMBSTONE) {
+                    if (freeSlot < 0) {
+                        freeSlot = i;
+                    }
+                } else if (t.keys[i] == key) {
+                    t.values[i] = value;
+                    return current;
+                }
+            }
+
+            if (t.values[freeSlot] == TOMBSTONE) {
+                --tombstones;
+            }
+            t.keys[freeSlot] = key;
+            t.values[freeSlot] = value;
+            ++size;
+            if (size + tombstones > t.threshold) {
+                rehash();
+            }
+
+            return NO_VALUE;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the removed value or {@link #NO_VALUE}
+     */
+    public int remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int i = slot(t, key);
+            if (i < 0) {
+                return NO_VALUE;
+            }
+
+            int value = t.values[i];
+            t.values[i] = TOMBSTONE;
+            --size;
+            ++tombstones;
+
+            return value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the length of the key and value arrays
+     */
+    public int capacity() {
+        return table.keys.length;
+    }
+
+    private static int find(Table t, long key) {
+        int i = slot(t, key);
+
+        return i < 0 ? NO_VALUE : t.values[i];
+    }
+
+    /**
+     * Probe sequences are bounded by the capacity, so a racy optimistic read can't loop forever.
+     */
+    private static int slot(Table t, long key) {
+        for (int i = index(key, t.mask), probes = 0; probes <= t.mask; i = (i + 1) & t.mask, ++probes) {
+            int value = t.values[i];
+            if (value == EMPTY) {
+                return -1;
+            }
+            if (value != TOMBSTONE && t.keys[i] == key) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void rehash() {
+        Table old = table;
+        // a table clogged mostly by tombstones is only cleaned up, otherwise it doubles
+        int capacity = size > old.threshold / 2 ? old.keys.length << 1 : old.keys.length;
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Index can't hold more than " + size + " entries");
+        }
+        Table grown = new Table(capacity);
+        for (int i = 0; i < old.values.length; ++i) {
+            if (old.values[i] >= 0) {
+                int j = index(old.keys[i], grown.mask);
+                while (grown.values[j] != EMPTY) {
+                    j = (j + 1) & grown.mask;
+                }
+                grown.keys[j] = old.keys[i];
+                grown.values[j] = old.values[i];
+            }
+        }
+        tombstones = 0;
+        table = grown;
+    }
+
+    private static int index(long key, int mask) {
+        return (int) mix(key) & mask;
+    }
+
+    /**
+     * MurmurHash3 finalizer, spreads sequential ids over the whole table.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+
+        return key;
+    }
+
+    /**
+     * @return a power of two capacity that holds the given number of entries within the load factor
+     */
+    private static int capacityFor(int entries) {
+        long required = (long) Math.ceil(Math.max(entries, 1) / LOAD_FACTOR);
+        if (required > MAX_CAPACITY) {
+            throw new IllegalStateException("Index can't hold " + entries + " entries");
+        }
+
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) required - 1) << 1);
+    }
+
+    /**
+     * Keys and values are replaced together on rehash, so a reader always sees a consistent pair of arrays.
+     */
+    private static final class Table {
+
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+        private final int threshold;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+            mask = capacity - 1;
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.learning.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Users persisted in a memory-mapped file of fixed width records, 24 bytes each: id, credit rating and money.
+ * <p>
+ * A record lives at an offset computed from the user id, {@code HEADER_SIZE + (id - 1) * RECORD_SIZE}, so resolving an
+ * id takes no index and no parsing, and opening a file with any number of users only reads the header: the records
+ * are paged in by the OS when touched. Ids must be positive; the file is sparse, gaps in the id range cost no disk.
+ * <p>
+ * The file is mapped lazily in segments of {@link #SEGMENT_RECORDS} records. The {@link UserView}s returned by the file
+ * are zero-copy, setters write the mapped record in place. Changes reach the disk when the OS flushes the pages or
+ * on {@link #force()}.
+ */
+public class MappedUserFile implements UserRecords, Closeable {
+
+    public static final int RECORD_SIZE = 24;
+    public static final int SEGMENT_RECORDS = 1 << 20;
+
+    static final int HEADER_SIZE = 64;
+
+    private static final long MAGIC = 0x5553455246494c45L; // "USERFILE"
+    private static final int VERSION = 1;
+    private static final long SEGMENT_SIZE = (long) SEGMENT_RECORDS * RECORD_SIZE;
+    private static final int CREDIT_RATING_OFFSET = 8;
+    private static final int MONEY_OFFSET = 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    private MappedUserFile(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the file, creating it if it doesn't exist.
+     * @throws IOException if the file can't be opened or isn't a user file
+     */
+    public static MappedUserFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() == 0) {
+                header.putLong(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).clear();
+                channel.write(header, 0);
+            } else {
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < 16 || header.getLong() != MAGIC || header.getInt() != VERSION
+                        || header.getInt() != RECORD_SIZE) {
+                    throw new IOException(path + " is not a user file");
+                }
+            }
+
+            return new MappedUserFile(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean contains(long id) {
+        return id > 0 && segmentIfMapped(id) != null && getId(id) == id;
+    }
+
+    /**
+     * @return a zero-copy view of the user or null if there is no such user in the file
+     */
+    public UserView get(long id) {
+        return contains(id) ? new UserView(this, id) : null;
+    }
+
+    /**
+     * Writes the whole record of the user.
+     * @return a zero-copy view of the written record
+     */
+    public UserView put(long id, double creditRating, double money) {
+        checkId(id);
+        MappedByteBuffer segment = segment(id);
+        int position = position(id);
+        segment.putDouble(position + CREDIT_RATING_OFFSET, creditRating);
+        segment.putDouble(position + MONEY_OFFSET, money);
+        // the id goes last, a record is only visible with its values in place
+        segment.putLong(position, id);
+
+        return new UserView(this, id);
+    }
+
+    /**
+     * Flushes changed records to the disk.
+     */
+    public void force() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        channel.force(true);
+    }
+
+    /**
+     * Closes the channel. Mapped segments stay valid until they are garbage collected, but the file mustn't be used
+     * after it's closed.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        segments = new MappedByteBuffer[0];
+        channel.close();
+    }
+
+    @Override
+    public long refOf(long id) {
+        return contains(id) ? id : -1;
+    }
+
+    @Override
+    public long getId(long id) {
+        return segment(id).getLong(position(id));
+    }
+
+    @Override
+    public double getCreditRating(long id) {
+        return segment(id).getDouble(position(id) + CREDIT_RATING_OFFSET);
+    }
+
+    @Override
+    public void setCreditRating(long id, double creditRating) {
+        segment(id).putDouble(position(id) + CREDIT_RATING_OFFSET, creditRating);
+    }
+
+    @Override
+    public double getMoney(long id) {
+        return segment(id).getDouble(position(id) + MONEY_OFFSET);
+    }
+
+    @Override
+    public void setMoney(long id, double money) {
+        segment(id).putDouble(position(id) + MONEY_OFFSET, money);
+    }
+
+    /**
+     * The file has no log, the two records are written one after the other.
+     */
+    @Override
+    public void setMoney(long id, double money, long otherId, double otherMoney) {
+        setMoney(id, money);
+        setMoney(otherId, otherMoney);
+    }
+
+    private static void checkId(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("User id must be positive: " + id);
+        }
+    }
+
+    private static int position(long id) {
+        return (int) ((id - 1) % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    private static int segmentIndex(long id) {
+        long index = (id - 1) / SEGMENT_RECORDS;
+        if (index > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("User id is too large: " + id);
+        }
+
+        return (int) index;
+    }
+
+    private MappedByteBuffer segmentIfMapped(long id) {
+        MappedByteBuffer[] current = segments;
+        int index = segmentIndex(id);
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+
+        // a segment the file already covers is mapped on first access, a segment past its end doesn't exist yet
+        try {
+            return HEADER_SIZE + index * SEGMENT_SIZE < channel.size() ? segment(id) : null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read the size of " + path, e);
+        }
+    }
+
+    private MappedByteBuffer segment(long id) {
+        MappedByteBuffer[] current = segments;
+        int index = segmentIndex(id);
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+
+        return map(index);
+    }
+
+    private synchronized MappedByteBuffer map(int index) {
+        MappedByteBuffer[] current = segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+
+        try {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + index * SEGMENT_SIZE,
+                    SEGMENT_SIZE);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            MappedByteBuffer[] mapped = Arrays.copyOf(current, Math.max(current.length, index + 1));
+            mapped[index] = segment;
+            segments = mapped;
+
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't map segment " + index + " of " + path, e);
+        }
+    }
+}
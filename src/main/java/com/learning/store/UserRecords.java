@@ -0,0 +1,28 @@
+package com.learning.store;
+
+/**
+ * Record level access to users kept outside of {@link com.learning.model.User} objects. A record is addressed by an
+ * opaque reference that only makes sense to the storage that handed it out (a slot, a file offset, ...).
+ */
+interface UserRecords {
+
+    /**
+     * @return the reference of the user's record, or -1 if there is no such user
+     */
+    long refOf(long id);
+
+    long getId(long ref);
+
+    double getCreditRating(long ref);
+
+    void setCreditRating(long ref, double creditRating);
+
+    double getMoney(long ref);
+
+    void setMoney(long ref, double money);
+
+    /**
+     * Sets the money of two users as one change, e.g. the two sides of a transfer.
+     */
+    void setMoney(long ref, double money, long otherRef, double otherMoney);
+}
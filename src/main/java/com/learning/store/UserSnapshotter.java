@@ -0,0 +1,318 @@
+package com.learning.store;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Point-in-time snapshots of a {@link UserStore} that is logged to a {@link UserWal}, so recovery loads the latest
+ * snapshot and replays only the log written after it instead of the whole history.
+ * <p>
+ * Snapshots are fuzzy: the LSN committed when a snapshot starts is recorded and the records are then copied while
+ * writers keep changing them. A copied record is at least as new as that LSN (see {@link UserStore}), and log entries
+ * carry absolute values, so replaying the log from the recorded LSN on top of the snapshot yields the exact state. A
+ * change that fails to commit is rolled back by the store; if that happens while the records are copied, the copy may
+ * hold the failed value and the snapshot fails instead of being kept.
+ * <p>
+ * A snapshot is a directory {@code snapshot-<lsn>} of part files holding {@link MappedUserFile#RECORD_SIZE} byte
+ * records and a manifest. Parts are written by parallel tasks into a temporary directory that is renamed once the
+ * manifest is on the disk, so a half written snapshot is never loaded. {@link #load} reads the parts in parallel as
+ * well, one task per part, so loading is bounded by the disk rather than by a single parsing thread.
+ */
+public class UserSnapshotter {
+
+    public static final int DEFAULT_PART_RECORDS = 1 << 20;
+
+    private static final int RECORD_SIZE = MappedUserFile.RECORD_SIZE;
+    private static final long MAGIC = 0x534e415053484f54L; // "SNAPSHOT"
+    private static final String PREFIX = "snapshot-";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String MANIFEST = "MANIFEST";
+    private static final int IO_BUFFER_RECORDS = 1 << 15;
+
+    private final UserStore store;
+    private final UserWal wal;
+    private final Path directory;
+    private final Executor executor;
+    private final int partRecords;
+    private final AtomicReference<CompletableFuture<Long>> running = new AtomicReference<>();
+    private final LongAdder failures = new LongAdder();
+    private volatile Throwable lastFailure;
+
+    /**
+     * @param executor runs the part writers, it should allow several blocking tasks at once
+     */
+    public UserSnapshotter(UserStore store, UserWal wal, Path directory, Executor executor) {
+        this(store, wal, directory, executor, DEFAULT_PART_RECORDS);
+    }
+
+    /**
+     * @param partRecords the number of records per part file, and so the unit of parallelism when loading
+     */
+    public UserSnapshotter(UserStore store, UserWal wal, Path directory, Executor executor, int partRecords) {
+        this.store = store;
+        this.wal = wal;
+        this.directory = directory;
+        this.executor = executor;
+        this.partRecords = partRecords;
+    }
+
+    /**
+     * Starts a snapshot in the background, or joins the one already running. Once the snapshot is complete, older
+     * snapshots and the log segments it covers are deleted.
+     * @return a future completed with the LSN of the snapshot, the LSN to replay the log from
+     */
+    public CompletableFuture<Long> snapshot() {
+        CompletableFuture<Long> snapshot = new CompletableFuture<>();
+        if (!running.compareAndSet(null, snapshot)) {
+            CompletableFuture<Long> current = running.get();
+            return current != null ? current : snapshot();
+        }
+
+        try {
+            long rollbacks = store.awaitWrites();
+            long lsn = wal.getCommittedLsn();
+            int size = store.size();
+            if (Files.isDirectory(directory.resolve(PREFIX + format(lsn)))) {
+                // nothing was committed since the last snapshot
+                running.set(null);
+                snapshot.complete(lsn);
+                return snapshot;
+            }
+            Path temporary = directory.resolve(PREFIX + format(lsn) + TEMPORARY_SUFFIX);
+            deleteRecursively(temporary);
+            Files.createDirectories(temporary);
+            List<CompletableFuture<Void>> parts = new ArrayList<>();
+            for (int from = 0, part = 0; from < size || part == 0; from += partRecords, ++part) {
+                int partFrom = from;
+                Path file = temporary.resolve(partName(part));
+                parts.add(CompletableFuture.runAsync(() -> writePart(file, partFrom, Math.min(size, partFrom
+                        + partRecords)), executor));
+            }
+
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(ignored -> {
+                        if (store.awaitWrites() != rollbacks) {
+                            throw new IllegalStateException("A change was rolled back while snapshot " + lsn
+                                    + " copied the records");
+                        }
+                        return complete(temporary, lsn, size, parts.size());
+                    })
+                    .whenComplete((result, error) -> {
+                        running.set(null);
+                        if (error != null) {
+                            snapshot.completeExceptionally(error);
+                        } else {
+                            snapshot.complete(result);
+                        }
+                    });
+        } catch (IOException | RuntimeException e) {
+            running.set(null);
+            snapshot.completeExceptionally(e);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Takes a snapshot periodically. A failed snapshot is counted and kept as the last failure, the schedule goes on.
+     * @param scheduler starts the snapshots, owned by the caller; the snapshots themselves run on the executor
+     * @return the future to cancel the schedule with
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(() -> snapshot().whenComplete((lsn, error) -> {
+            if (error != null) {
+                failures.increment();
+                lastFailure = error;
+            }
+        }), period, period, unit);
+    }
+
+    /**
+     * @return the number of snapshots started by {@link #schedule} that failed
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the error of the last snapshot started by {@link #schedule} that failed, null if none did
+     */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Loads the latest complete snapshot of the directory into an empty store, reading its parts in parallel.
+     * @param executor runs one reader per part file
+     * @return the LSN to recover the log from, 0 if there is no snapshot
+     */
+    public static long load(Path directory, UserStore store, Executor executor) throws IOException {
+        Optional<Path> latest = latestSnapshot(directory);
+        if (!latest.isPresent()) {
+            return 0;
+        }
+
+        Path snapshot = latest.get();
+        long lsn;
+        int size;
+        int partRecords;
+        int parts;
+        try (DataInputStream manifest = new DataInputStream(Files.newInputStream(snapshot.resolve(MANIFEST)))) {
+            if (manifest.readLong() != MAGIC) {
+                throw new IOException(snapshot + " has a corrupted manifest");
+            }
+            lsn = manifest.readLong();
+            size = manifest.readInt();
+            partRecords = manifest.readInt();
+            parts = manifest.readInt();
+        }
+
+        store.beginRestore(size);
+        List<CompletableFuture<Void>> readers = new ArrayList<>();
+        for (int part = 0; part < parts; ++part) {
+            Path file = snapshot.resolve(partName(part));
+            int from = part * partRecords;
+            readers.add(CompletableFuture.runAsync(() -> readPart(file, store, from), executor));
+        }
+        try {
+            CompletableFuture.allOf(readers.toArray(new CompletableFuture<?>[0])).join();
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e;
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Can't load " + snapshot, e);
+        }
+        store.finishRestore(size);
+
+        return lsn;
+    }
+
+    private void writePart(Path file, int from, int to) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (int slot = from; slot < to; ++slot) {
+                buffer.putLong(store.getId(slot))
+                        .putDouble(store.getCreditRating(slot))
+                        .putDouble(store.getMoney(slot));
+                if (!buffer.hasRemaining()) {
+                    writeFully(channel, buffer);
+                }
+            }
+            writeFully(channel, buffer);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void readPart(Path file, UserStore store, int from) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int slot = from;
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                if (buffer.remaining() < RECORD_SIZE) {
+                    throw new IOException(file + " ends with a partial record");
+                }
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    store.restore(slot++, buffer.getLong(), buffer.getDouble(), buffer.getDouble());
+                }
+                buffer.compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long complete(Path temporary, long lsn, int size, int parts) {
+        try {
+            Path manifest = temporary.resolve(MANIFEST);
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(manifest))) {
+                out.writeLong(MAGIC);
+                out.writeLong(lsn);
+                out.writeInt(size);
+                out.writeInt(partRecords);
+                out.writeInt(parts);
+            }
+            try (FileChannel channel = FileChannel.open(manifest, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Path snapshot = directory.resolve(PREFIX + format(lsn));
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+            for (Path older : snapshots(directory)) {
+                if (!older.equals(snapshot)) {
+                    deleteRecursively(older);
+                }
+            }
+            wal.deleteSegmentsBefore(lsn);
+
+            return lsn;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Optional<Path> latestSnapshot(Path directory) throws IOException {
+        return snapshots(directory).stream()
+                .filter(snapshot -> !snapshot.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+                .max(Comparator.comparing(snapshot -> snapshot.getFileName().toString()));
+    }
+
+    private static List<Path> snapshots(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static String partName(int part) {
+        return String.format("part-%05d.dat", part);
+    }
+
+    private static String format(long lsn) {
+        return String.format("%020d", lsn);
+    }
+}
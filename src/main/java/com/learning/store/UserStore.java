@@ -0,0 +1,431 @@
+package com.learning.store;
+
+import com.learning.model.Money;
+import com.learning.model.User;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Columnar (struct-of-arrays) storage for users. Instead of one heap object per user, ids, credit ratings and
+ * balances are kept in parallel primitive columns, so every user costs 24 bytes of column space and the GC has
+ * nothing to scan. The columns can live on the heap or off-heap in direct buffers.
+ * <p>
+ * Columns are split into fixed size chunks. Growing the store only appends chunks, records never move, so a write
+ * through a view can't be lost to a concurrent resize. Ids are resolved to slots by a primitive {@link LongIntIndex}.
+ * Adding users is synchronized, looking them up, reading and updating existing records is not; each record is expected
+ * to have a single writer at a time.
+ * <p>
+ * A store can be made durable by a {@link UserWal}: every creation and every change of money or credit rating is then
+ * logged, the two balances of a transfer as one entry, and the mutating call returns once its log entry is committed.
+ * After a restart {@link #recover(long)} rebuilds the store from the log, optionally on top of a snapshot loaded by
+ * {@link UserSnapshotter#load}.
+ * <p>
+ * A record is changed before its entry is appended to the log. Whatever the log has committed up to some LSN is
+ * therefore already in the columns, which is what lets {@link UserSnapshotter} copy them while writers keep going. If
+ * the entry fails to commit, the record gets its old value back before the call throws, so a failed change is neither
+ * visible nor copied by a later snapshot. A snapshot running meanwhile may have copied it, so it checks
+ * {@link #awaitWrites()} and is dropped if a change was rolled back.
+ */
+public class UserStore implements UserRecords {
+
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final boolean offHeap;
+    private final UserWal wal;
+    private final LongIntIndex slots = new LongIntIndex();
+    // held shared by a logged change from applying it to its commit or rollback
+    private final ReentrantReadWriteLock writes = new ReentrantReadWriteLock();
+    private final LongAdder rollbacks = new LongAdder();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+
+    /**
+     * Creates an empty heap backed store.
+     */
+    public UserStore() {
+        this(false);
+    }
+
+    /**
+     * @param offHeap whether the columns are kept in direct buffers outside of the Java heap
+     */
+    public UserStore(boolean offHeap) {
+        this(offHeap, null);
+    }
+
+    /**
+     * @param offHeap whether the columns are kept in direct buffers outside of the Java heap
+     * @param wal the log every mutation is written to before the call returns, null for a volatile store
+     */
+    public UserStore(boolean offHeap, UserWal wal) {
+        this.offHeap = offHeap;
+        this.wal = wal;
+    }
+
+    /**
+     * @return the number of users in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Returns a view of the user with the given id.
+     * @param id the user id
+     * @return a view backed by the store or null if there is no such user
+     */
+    public UserView get(long id) {
+        int slot = slotOf(id);
+
+        return slot < 0 ? null : view(slot);
+    }
+
+    /**
+     * Reads the user's values without creating a view.
+     * @return a copy of the user's record, not affected by later changes of the record, or null if there is no such
+     * user
+     */
+    public User read(long id) {
+        int slot = slotOf(id);
+
+        return slot < 0 ? null : new User(getId(slot), getCreditRating(slot), getMoney(slot));
+    }
+
+    /**
+     * Returns a view of the user with the given id, adding the user with the given values if it isn't stored yet.
+     */
+    public UserView getOrAdd(long id, double creditRating, double money) {
+        CompletableFuture<Long> logged = null;
+        int slot;
+        synchronized (this) {
+            slot = slotOf(id);
+            if (slot < 0) {
+                slot = insert(id, creditRating, money);
+                logged = log(wal -> wal.appendCreate(id, creditRating, money));
+            }
+        }
+        awaitCommit(logged);
+
+        return view(slot);
+    }
+
+    /**
+     * Adds a new user.
+     * @return the slot of the new record
+     * @throws IllegalArgumentException if a user with the same id is already stored
+     */
+    public int add(long id, double creditRating, double money) {
+        CompletableFuture<Long> logged;
+        int slot;
+        synchronized (this) {
+            if (slotOf(id) >= 0) {
+                throw new IllegalArgumentException("User " + id + " is already stored");
+            }
+            // logged under the lock, so creations are in the log in the order of their slots
+            slot = insert(id, creditRating, money);
+            logged = log(wal -> wal.appendCreate(id, creditRating, money));
+        }
+        awaitCommit(logged);
+
+        return slot;
+    }
+
+    /**
+     * Replays the attached log into the store without logging the replayed entries again. Meant to be called on an
+     * empty store (or one loaded from a snapshot) before it's used.
+     * @param fromLsn the LSN to start from, 0 for the whole log
+     * @return the LSN the log was replayed up to
+     * @throws IllegalStateException if the store has no log
+     */
+    public long recover(long fromLsn) throws IOException {
+        if (wal == null) {
+            throw new IllegalStateException("The store has no log to recover from");
+        }
+
+        return wal.replay(fromLsn, new UserWal.Handler() {
+            @Override
+            public void onCreate(long id, double creditRating, double money) {
+                synchronized (UserStore.this) {
+                    int slot = slotOf(id);
+                    if (slot < 0) {
+                        insert(id, creditRating, money);
+                    } else {
+                        write(slot, id, creditRating, money);
+                    }
+                }
+            }
+
+            @Override
+            public void onMoney(long id, double money) {
+                int slot = slotOf(id);
+                if (slot >= 0) {
+                    chunk(slot).money.put(offset(slot), money);
+                }
+            }
+
+            @Override
+            public void onCreditRating(long id, double creditRating) {
+                int slot = slotOf(id);
+                if (slot >= 0) {
+                    chunk(slot).creditRatings.put(offset(slot), creditRating);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param id the user id
+     * @return the slot of the user's record or -1 if there is no such user
+     */
+    public int slotOf(long id) {
+        return slots.get(id);
+    }
+
+    /**
+     * @param slot the record slot, must be less than {@link #size()}
+     * @return a new view of the record, see {@link UserView} for its cost and how to reuse it
+     */
+    public UserView view(int slot) {
+        checkSlot(slot);
+
+        return new UserView(this, slot);
+    }
+
+    @Override
+    public long refOf(long id) {
+        return slotOf(id);
+    }
+
+    @Override
+    public long getId(long slot) {
+        return chunk(slot).ids.get(offset(slot));
+    }
+
+    @Override
+    public double getCreditRating(long slot) {
+        return chunk(slot).creditRatings.get(offset(slot));
+    }
+
+    @Override
+    public void setCreditRating(long slot, double creditRating) {
+        DoubleBuffer column = chunk(slot).creditRatings;
+        int offset = offset(slot);
+        double previous = column.get(offset);
+        update(() -> column.put(offset, creditRating), () -> column.put(offset, previous),
+                wal -> wal.appendCreditRating(getId(slot), creditRating));
+    }
+
+    @Override
+    public double getMoney(long slot) {
+        return chunk(slot).money.get(offset(slot));
+    }
+
+    @Override
+    public void setMoney(long slot, double money) {
+        DoubleBuffer column = chunk(slot).money;
+        int offset = offset(slot);
+        double previous = column.get(offset);
+        update(() -> column.put(offset, money), () -> column.put(offset, previous),
+                wal -> wal.appendMoney(getId(slot), money));
+    }
+
+    /**
+     * Logged as one transfer entry, so either both balances are committed or, after a rollback, neither.
+     */
+    @Override
+    public void setMoney(long slot, double money, long otherSlot, double otherMoney) {
+        DoubleBuffer column = chunk(slot).money;
+        DoubleBuffer otherColumn = chunk(otherSlot).money;
+        int offset = offset(slot);
+        int otherOffset = offset(otherSlot);
+        double previous = column.get(offset);
+        double otherPrevious = otherColumn.get(otherOffset);
+        update(() -> {
+            column.put(offset, money);
+            otherColumn.put(otherOffset, otherMoney);
+        }, () -> {
+            column.put(offset, previous);
+            otherColumn.put(otherOffset, otherPrevious);
+        }, wal -> wal.appendTransfer(getId(slot), money, getId(otherSlot), otherMoney));
+    }
+
+    /**
+     * Copies the balances of all users, in slot order, as minor units for bulk aggregation with
+     * {@link com.learning.util.Balances}.
+     */
+    public long[] getBalances() {
+        int count = size;
+        long[] balances = new long[count];
+        for (int slot = 0; slot < count; ++slot) {
+            balances[slot] = Money.toMinorUnits(chunk(slot).money.get(offset(slot)));
+        }
+
+        return balances;
+    }
+
+    /**
+     * Waits for the logged changes in progress to be committed or rolled back.
+     * @return the number of changes rolled back so far, a snapshot that copied records while it changed may hold a
+     * value that never committed
+     */
+    long awaitWrites() {
+        writes.writeLock().lock();
+        try {
+            return rollbacks.sum();
+        } finally {
+            writes.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sizes an empty store for a bulk restore of the given number of records.
+     */
+    synchronized void beginRestore(int count) {
+        if (size != 0) {
+            throw new IllegalStateException("Only an empty store can be restored");
+        }
+        ensureCapacity(count);
+    }
+
+    /**
+     * Writes a restored record, the slots of a restore may be written by several threads at once.
+     */
+    void restore(int slot, long id, double creditRating, double money) {
+        write(slot, id, creditRating, money);
+    }
+
+    /**
+     * Makes the restored records visible and indexes them. The index is built on the calling thread even though the
+     * records were read in parallel: it's a single open addressing table that can't take concurrent inserts, and
+     * inserting a record costs a hash and a probe, little next to reading and parsing it from its part file.
+     */
+    synchronized void finishRestore(int count) {
+        size = count;
+        for (int slot = 0; slot < count; ++slot) {
+            slots.put(getId(slot), slot);
+        }
+    }
+
+    private CompletableFuture<Long> log(Function<UserWal, CompletableFuture<Long>> entry) {
+        return wal == null ? null : entry.apply(wal);
+    }
+
+    /**
+     * Concurrent callers wait for the same group commit, so blocking here costs one fsync per batch, not per call.
+     */
+    private static void awaitCommit(CompletableFuture<Long> logged) {
+        if (logged != null) {
+            logged.join();
+        }
+    }
+
+    /**
+     * Applies a change and waits for it to commit, or undoes it if it doesn't. Nobody else changes the records
+     * meanwhile, as each record has a single writer at a time.
+     */
+    private void update(Runnable apply, Runnable undo, Function<UserWal, CompletableFuture<Long>> entry) {
+        if (wal == null) {
+            apply.run();
+            return;
+        }
+        writes.readLock().lock();
+        try {
+            apply.run();
+            try {
+                awaitCommit(entry.apply(wal));
+            } catch (RuntimeException e) {
+                undo.run();
+                rollbacks.increment();
+                throw e;
+            }
+        } finally {
+            writes.readLock().unlock();
+        }
+    }
+
+    private int insert(long id, double creditRating, double money) {
+        int slot = size;
+        ensureCapacity(slot + 1);
+        write(slot, id, creditRating, money);
+        size = slot + 1;
+        slots.put(id, slot);
+
+        return slot;
+    }
+
+    private void write(int slot, long id, double creditRating, double money) {
+        Chunk chunk = chunks[slot >>> CHUNK_SHIFT];
+        int offset = slot & CHUNK_MASK;
+        chunk.ids.put(offset, id);
+        chunk.creditRatings.put(offset, creditRating);
+        chunk.money.put(offset, money);
+    }
+
+    private void ensureCapacity(int capacity) {
+        Chunk[] current = chunks;
+        int required = (capacity + CHUNK_MASK) >>> CHUNK_SHIFT;
+        if (required <= current.length) {
+            return;
+        }
+
+        Chunk[] grown = Arrays.copyOf(current, required);
+        for (int i = current.length; i < grown.length; ++i) {
+            grown[i] = new Chunk(offHeap);
+        }
+        chunks = grown;
+    }
+
+    private Chunk chunk(long slot) {
+        return chunks[(int) (slot >>> CHUNK_SHIFT)];
+    }
+
+    private static int offset(long slot) {
+        return (int) slot & CHUNK_MASK;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " is out of [0, " + size + ")");
+        }
+    }
+
+    /**
+     * {@link #CHUNK_SIZE} records, one buffer per column.
+     */
+    private static final class Chunk {
+
+        private final LongBuffer ids;
+        private final DoubleBuffer creditRatings;
+        private final DoubleBuffer money;
+
+        private Chunk(boolean offHeap) {
+            if (offHeap) {
+                ids = allocateDirect().asLongBuffer();
+                creditRatings = allocateDirect().asDoubleBuffer();
+                money = allocateDirect().asDoubleBuffer();
+            } else {
+                ids = LongBuffer.allocate(CHUNK_SIZE);
+                creditRatings = DoubleBuffer.allocate(CHUNK_SIZE);
+                money = DoubleBuffer.allocate(CHUNK_SIZE);
+            }
+        }
+
+        private static ByteBuffer allocateDirect() {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE * Long.BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.learning.store;
+
+import com.learning.model.User;
+
+/**
+ * Cursor over the stored record of a user: every accessor reads or writes the record, so changes made through the
+ * view are visible to every other view of the same record. Its only state is the storage and the record reference,
+ * so code that goes through many users, e.g. a scan or a batch, allocates one view and moves it from record to record
+ * with {@link #moveTo(long)}. A view that is moved belongs to its caller, it must not be handed to other threads.
+ * <p>
+ * A view isn't a {@link User}: a User is a value its holder owns, while a view writes to the shared record. Take a
+ * copy with {@link #toUser()} to hand the values out.
+ */
+public final class UserView {
+
+    private final UserRecords records;
+    private long ref;
+
+    UserView(UserRecords records, long ref) {
+        this.records = records;
+        this.ref = ref;
+    }
+
+    /**
+     * Points the view at the record of another user of the same storage.
+     * @return false if there is no such user, the view then stays where it was
+     */
+    public boolean moveTo(long id) {
+        long target = records.refOf(id);
+        if (target < 0) {
+            return false;
+        }
+        ref = target;
+
+        return true;
+    }
+
+    public long getId() {
+        return records.getId(ref);
+    }
+
+    public double getCreditRating() {
+        return records.getCreditRating(ref);
+    }
+
+    public void setCreditRating(double creditRating) {
+        records.setCreditRating(ref, creditRating);
+    }
+
+    public double getMoney() {
+        return records.getMoney(ref);
+    }
+
+    public void setMoney(double money) {
+        records.setMoney(ref, money);
+    }
+
+    /**
+     * Sets the money of this user and of another user of the same storage as one change, e.g. the two sides of a
+     * transfer: a logged store writes them as one entry, and if that fails to commit neither balance changes.
+     * @throws IllegalArgumentException if the other user is kept in another storage
+     */
+    public void setMoney(double money, UserView other, double otherMoney) {
+        if (other.records != records) {
+            throw new IllegalArgumentException("Users " + getId() + " and " + other.getId() + " are kept apart");
+        }
+        records.setMoney(ref, money, other.ref, otherMoney);
+    }
+
+    /**
+     * @return a copy of the record's current values, not affected by later changes of the record
+     */
+    public User toUser() {
+        return new User(getId(), getCreditRating(), getMoney());
+    }
+
+    @Override
+    public String toString() {
+        return "User{id=" + getId() + ", creditRating=" + getCreditRating() + ", money=" + getMoney() + '}';
+    }
+}
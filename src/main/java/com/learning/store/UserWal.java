@@ -0,0 +1,436 @@
+package com.learning.store;
+
+import com.learning.util.Histogram;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of user mutations: user creation, money and credit rating changes, and transfers that
+ * change the money of two users at once.
+ * <p>
+ * Entries are compact binary records (a type byte, the user id and the new values). Appends from any number of
+ * threads are queued and a single writer thread turns everything queued at that moment into one frame, writes it and
+ * syncs it with one {@code fsync} (group commit). The futures of all entries of the frame complete together once the
+ * frame is on the disk, so the more concurrent writers there are, the fewer syncs per entry.
+ * <p>
+ * A frame is {@code [payload length][CRC32 of payload][entries]}. The log is split into segment files named after
+ * the log sequence number (LSN, the logical byte position in the log) of their first frame. On open the tail of the
+ * last segment is validated and a torn frame left by a crash is cut off. {@link #replay(long, Handler)} applies the
+ * committed entries in order to rebuild the user state.
+ */
+public class UserWal implements Closeable {
+
+    /**
+     * Receives the entries of the log during replay.
+     */
+    public interface Handler {
+
+        void onCreate(long id, double creditRating, double money);
+
+        void onMoney(long id, double money);
+
+        void onCreditRating(long id, double creditRating);
+
+        /**
+         * Receives both new balances of a transfer, by default as two money changes.
+         */
+        default void onTransfer(long fromId, double fromMoney, long toId, double toMoney) {
+            onMoney(fromId, fromMoney);
+            onMoney(toId, toMoney);
+        }
+    }
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    private static final byte CREATE = 1;
+    private static final byte MONEY = 2;
+    private static final byte CREDIT_RATING = 3;
+    private static final byte TRANSFER = 4;
+    // the largest entry
+    private static final int TRANSFER_SIZE = 1 + 4 * 8;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int MAX_BATCH = 8192;
+    private static final int MAX_PAYLOAD = MAX_BATCH * TRANSFER_SIZE;
+    private static final String SUFFIX = ".wal";
+
+    private final Path directory;
+    private final long segmentSize;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE + MAX_PAYLOAD)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private final Histogram commitLatency = new Histogram();
+    private final Histogram batchSize = new Histogram();
+    private final Thread writer;
+
+    private FileChannel segment;
+    private long segmentStart;
+    private volatile long committedLsn;
+    private volatile boolean closed;
+
+    private UserWal(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        List<Long> segments = segments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            segmentStart = segments.get(segments.size() - 1);
+            segment = FileChannel.open(segmentPath(segmentStart), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long validEnd = scan(segment, Long.MAX_VALUE, segmentStart, null);
+            segment.truncate(validEnd - segmentStart);
+            segment.position(validEnd - segmentStart);
+            committedLsn = validEnd;
+        }
+
+        writer = new Thread(this::writeLoop, "user-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the log kept in the given directory, creating the directory if needed.
+     */
+    public static UserWal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize the size after which the log rolls over to a new segment file
+     */
+    public static UserWal open(Path directory, long segmentSize) throws IOException {
+        Files.createDirectories(directory);
+
+        return new UserWal(directory, segmentSize);
+    }
+
+    /**
+     * @return a future completed with the LSN right after the entry once the entry is durable
+     */
+    public CompletableFuture<Long> appendCreate(long id, double creditRating, double money) {
+        return append(new Pending(CREATE, id, creditRating, money, 0));
+    }
+
+    public CompletableFuture<Long> appendMoney(long id, double money) {
+        return append(new Pending(MONEY, id, money, 0, 0));
+    }
+
+    public CompletableFuture<Long> appendCreditRating(long id, double creditRating) {
+        return append(new Pending(CREDIT_RATING, id, creditRating, 0, 0));
+    }
+
+    /**
+     * Logs the new balances of two users as one entry, so replay applies both of them or, if the entry didn't make it
+     * to the disk, neither.
+     */
+    public CompletableFuture<Long> appendTransfer(long fromId, double fromMoney, long toId, double toMoney) {
+        return append(new Pending(TRANSFER, fromId, fromMoney, toMoney, toId));
+    }
+
+    /**
+     * Applies every committed entry that starts at or after the given LSN.
+     * @param fromLsn a frame boundary, e.g. an LSN returned by an append or 0 for the whole log
+     * @return the LSN the replay stopped at
+     */
+    public long replay(long fromLsn, Handler handler) throws IOException {
+        long end = committedLsn;
+        List<Long> segments = segments(directory);
+        long position = fromLsn;
+        for (int i = 0; i < segments.size(); ++i) {
+            long start = segments.get(i);
+            boolean hasNext = i + 1 < segments.size();
+            if (hasNext && segments.get(i + 1) <= fromLsn || start >= end) {
+                continue;
+            }
+
+            try (FileChannel channel = FileChannel.open(segmentPath(start), StandardOpenOption.READ)) {
+                position = scan(channel, end, start, (lsn, entries) -> {
+                    if (lsn >= fromLsn) {
+                        decode(entries, handler);
+                    }
+                });
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Deletes the segments holding only entries before the given LSN, e.g. once a snapshot covers them. The segment
+     * being written is never deleted.
+     * @return the number of deleted segments
+     */
+    public int deleteSegmentsBefore(long lsn) throws IOException {
+        List<Long> segments = segments(directory);
+        int deleted = 0;
+        for (int i = 0; i + 1 < segments.size() && segments.get(i + 1) <= lsn; ++i) {
+            Files.deleteIfExists(segmentPath(segments.get(i)));
+            ++deleted;
+        }
+
+        return deleted;
+    }
+
+    /**
+     * @return the LSN up to which the log is durable
+     */
+    public long getCommittedLsn() {
+        return committedLsn;
+    }
+
+    /**
+     * @return the time in nanoseconds from an append to its fsync
+     */
+    public Histogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * @return the number of entries committed by each fsync
+     */
+    public Histogram getBatchSize() {
+        return batchSize;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Commits the entries appended so far and stops the writer. Appends made after close fail.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending(new IllegalStateException("The log is closed"));
+        segment.close();
+    }
+
+    private CompletableFuture<Long> append(Pending pending) {
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("The log is closed"));
+            return pending.future;
+        }
+
+        queue.add(pending);
+        // the writer may have drained the queue for the last time in between, then nobody else will take the entry
+        if (closed && queue.remove(pending)) {
+            pending.future.completeExceptionally(new IllegalStateException("The log is closed"));
+        }
+
+        return pending.future;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            Pending first;
+            try {
+                first = queue.poll(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (first == null) {
+                if (closed) {
+                    break;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH - 1);
+            try {
+                long lsn = writeFrame(batch);
+                long now = System.nanoTime();
+                // stats are recorded before any commit completes, so a committed writer always sees its own batch
+                batchSize.record(batch.size());
+                for (Pending pending : batch) {
+                    commitLatency.record(now - pending.appendedAt);
+                    pending.future.complete(lsn);
+                }
+            } catch (IOException | RuntimeException e) {
+                batch.forEach(pending -> pending.future.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private long writeFrame(List<Pending> batch) throws IOException {
+        buffer.clear().position(FRAME_HEADER_SIZE);
+        for (Pending pending : batch) {
+            buffer.put(pending.type).putLong(pending.id).putDouble(pending.first);
+            if (pending.type == CREATE) {
+                buffer.putDouble(pending.second);
+            } else if (pending.type == TRANSFER) {
+                buffer.putLong(pending.otherId).putDouble(pending.second);
+            }
+        }
+        int payloadLength = buffer.position() - FRAME_HEADER_SIZE;
+        buffer.flip().position(FRAME_HEADER_SIZE);
+        crc.reset();
+        crc.update(buffer);
+        buffer.putInt(0, payloadLength).putInt(4, (int) crc.getValue()).position(0);
+
+        try {
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            // cut off the partial frame, otherwise replay would stop at it and miss every frame committed after it
+            segment.truncate(committedLsn - segmentStart);
+            segment.position(committedLsn - segmentStart);
+            throw e;
+        }
+
+        long lsn = committedLsn + FRAME_HEADER_SIZE + payloadLength;
+        committedLsn = lsn;
+        if (lsn - segmentStart >= segmentSize) {
+            segment.close();
+            openSegment(lsn);
+        }
+
+        return lsn;
+    }
+
+    private void openSegment(long start) throws IOException {
+        segment = FileChannel.open(segmentPath(start), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segmentStart = start;
+        committedLsn = start;
+    }
+
+    private void failPending(Throwable error) {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Walks the valid frames of a segment.
+     * @param end the LSN to stop at
+     * @param visitor receives the LSN of every frame with its entries, may be null
+     * @return the LSN after the last valid frame
+     */
+    private static long scan(FileChannel channel, long end, long start, FrameVisitor visitor) throws IOException {
+        long length = Math.min(channel.size(), end - start);
+        if (length <= 0) {
+            return start;
+        }
+
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 checksum = new CRC32();
+        while (data.remaining() >= FRAME_HEADER_SIZE) {
+            int frameStart = data.position();
+            int payloadLength = data.getInt();
+            int expectedCrc = data.getInt();
+            if (payloadLength <= 0 || payloadLength > MAX_PAYLOAD || payloadLength > data.remaining()) {
+                data.position(frameStart);
+                break;
+            }
+
+            ByteBuffer payload = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+            payload.limit(payloadLength);
+            checksum.reset();
+            checksum.update(payload.duplicate());
+            if ((int) checksum.getValue() != expectedCrc) {
+                data.position(frameStart);
+                break;
+            }
+
+            if (visitor != null) {
+                visitor.visit(start + frameStart, payload);
+            }
+            data.position(frameStart + FRAME_HEADER_SIZE + payloadLength);
+        }
+
+        return start + data.position();
+    }
+
+    private static void decode(ByteBuffer entries, Handler handler) {
+        while (entries.hasRemaining()) {
+            byte type = entries.get();
+            long id = entries.getLong();
+            double value = entries.getDouble();
+            switch (type) {
+                case CREATE:
+                    handler.onCreate(id, value, entries.getDouble());
+                    break;
+                case MONEY:
+                    handler.onMoney(id, value);
+                    break;
+                case CREDIT_RATING:
+                    handler.onCreditRating(id, value);
+                    break;
+                case TRANSFER:
+                    long toId = entries.getLong();
+                    handler.onTransfer(id, value, toId, entries.getDouble());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown log entry type " + type);
+            }
+        }
+    }
+
+    private Path segmentPath(long start) {
+        return directory.resolve(String.format("%020d%s", start, SUFFIX));
+    }
+
+    private static List<Long> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private interface FrameVisitor {
+
+        void visit(long lsn, ByteBuffer entries);
+    }
+
+    private static final class Pending {
+
+        private final byte type;
+        private final long id;
+        private final double first;
+        private final double second;
+        private final long otherId;
+        private final long appendedAt = System.nanoTime();
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private Pending(byte type, long id, double first, double second, long otherId) {
+            this.type = type;
+            this.id = id;
+            this.first = first;
+            this.second = second;
+            this.otherId = otherId;
+        }
+    }
+}
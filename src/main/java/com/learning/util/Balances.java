@@ -0,0 +1,109 @@
+package com.learning.util;
+
+/**
+ * Bulk aggregation over arrays of balances in minor units (see {@link com.learning.model.Money}).
+ * <p>
+ * The loops are deliberately plain: counted {@code int} loops over a single array, no method calls and no branches
+ * in the body, which is the shape the JIT unrolls and auto-vectorizes into SIMD adds and compares. Anything smarter
+ * in the loop body, even {@link Math#addExact}, keeps it scalar.
+ */
+public final class Balances {
+
+    private Balances() {
+    }
+
+    /**
+     * Exact total of the balances.
+     * <p>
+     * To detect overflow without a per-element check, the high and low 32 bits of every balance are summed
+     * separately: neither partial sum can overflow for any array length, and the total is assembled with exact
+     * arithmetic at the end, after carrying the overflow of the low sum into the high one.
+     * @throws ArithmeticException if the total doesn't fit into a long
+     */
+    public static long sum(long[] balances) {
+        return sum(balances, 0, balances.length);
+    }
+
+    /**
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @see #sum(long[])
+     */
+    public static long sum(long[] balances, int from, int to) {
+        checkRange(balances, from, to);
+
+        long high = 0;
+        long low = 0;
+        for (int i = from; i < to; ++i) {
+            high += balances[i] >> 32;
+            low += balances[i] & 0xFFFFFFFFL;
+        }
+
+        // the low sum may hold whole multiples of 2^32 that belong to the high part, a total near the limits would
+        // otherwise look like an overflow of the high part alone
+        high += low >> 32;
+        low &= 0xFFFFFFFFL;
+
+        return Math.addExact(Math.multiplyExact(high, 1L << 32), low);
+    }
+
+    /**
+     * @return the smallest balance, {@link Long#MAX_VALUE} for an empty array
+     */
+    public static long min(long[] balances) {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < balances.length; ++i) {
+            min = Math.min(min, balances[i]);
+        }
+
+        return min;
+    }
+
+    /**
+     * @return the largest balance, {@link Long#MIN_VALUE} for an empty array
+     */
+    public static long max(long[] balances) {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < balances.length; ++i) {
+            max = Math.max(max, balances[i]);
+        }
+
+        return max;
+    }
+
+    /**
+     * Counts the balances in buckets of equal width. Balances below the first bucket are counted in it, balances above
+     * the last bucket are counted in the last one.
+     * @param origin the lower bound of the first bucket
+     * @param bucketWidth the width of every bucket, positive
+     * @param buckets the number of buckets, positive
+     * @return the count of every bucket
+     */
+    public static long[] histogram(long[] balances, long origin, long bucketWidth, int buckets) {
+        if (bucketWidth <= 0 || buckets <= 0) {
+            throw new IllegalArgumentException("Bucket width and number of buckets must be positive");
+        }
+
+        long[] counts = new long[buckets];
+        long last = buckets - 1;
+        for (int i = 0; i < balances.length; ++i) {
+            long balance = balances[i];
+            long offset = balance - origin;
+            // the difference overflows iff the signs of the operands differ and the result's isn't the balance's;
+            // it then saturates to MAX_VALUE, or MIN_VALUE for a negative balance
+            long overflow = ((balance ^ origin) & (balance ^ offset)) >> 63;
+            offset = (offset & ~overflow) | ((Long.MAX_VALUE + (balance >>> 63)) & overflow);
+            // branch-free clamping; the scattered increment itself can't be vectorized
+            long bucket = Math.max(offset, -1) / bucketWidth;
+            counts[(int) Math.min(Math.max(bucket, 0), last)]++;
+        }
+
+        return counts;
+    }
+
+    private static void checkRange(long[] balances, int from, int to) {
+        if (from < 0 || to > balances.length || from > to) {
+            throw new IndexOutOfBoundsException("[" + from + ", " + to + ") is out of [0, " + balances.length + ")");
+        }
+    }
+}
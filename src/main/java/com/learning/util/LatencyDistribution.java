@@ -0,0 +1,76 @@
+package com.learning.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of simulated latencies, sampled in nanoseconds. Real backends rarely answer in constant time: most
+ * calls are fast, and a tail of slow ones (GC pauses, cache misses, retransmits) drives the p99 and p999 that capacity
+ * planning, timeouts and hedging have to deal with. The factories cover the usual shapes of that tail.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * @return a non-negative latency in nanoseconds
+     */
+    long sampleNanos(Random random);
+
+    /**
+     * Every call takes exactly the given time.
+     */
+    static LatencyDistribution constant(long latency, TimeUnit unit) {
+        long nanos = unit.toNanos(latency);
+
+        return random -> nanos;
+    }
+
+    /**
+     * Latencies spread evenly between the bounds.
+     */
+    static LatencyDistribution uniform(long min, long max, TimeUnit unit) {
+        long minNanos = unit.toNanos(min);
+        long maxNanos = unit.toNanos(max);
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("Max latency is below min latency: " + min + ", " + max);
+        }
+
+        return random -> minNanos + (long) (random.nextDouble() * (maxNanos - minNanos));
+    }
+
+    /**
+     * Memoryless latencies with the given mean, e.g. the service time of a queue; p99 is about 4.6 times the mean.
+     */
+    static LatencyDistribution exponential(long mean, TimeUnit unit) {
+        double meanNanos = unit.toNanos(mean);
+
+        return random -> Math.round(-meanNanos * Math.log(1 - random.nextDouble()));
+    }
+
+    /**
+     * Right-skewed latencies with a long tail, the usual fit of measured service latencies, given by their median and
+     * 99th percentile.
+     */
+    static LatencyDistribution logNormal(long median, long p99, TimeUnit unit) {
+        if (median <= 0 || p99 < median) {
+            throw new IllegalArgumentException("Median must be positive and not above p99: " + median + ", " + p99);
+        }
+        // z-score of the 99th percentile of the standard normal distribution
+        double z99 = 2.3263478740408408;
+        double mu = Math.log(unit.toNanos(median));
+        double sigma = (Math.log(unit.toNanos(p99)) - mu) / z99;
+
+        return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Mostly the usual latencies, but with the given probability a call stalls and takes the slow latency instead.
+     */
+    static LatencyDistribution bimodal(LatencyDistribution usual, LatencyDistribution stall, double stallProbability) {
+        if (stallProbability < 0 || stallProbability > 1) {
+            throw new IllegalArgumentException("Stall probability must be in [0, 1]: " + stallProbability);
+        }
+
+        return random -> random.nextDouble() < stallProbability ? stall.sampleNanos(random) : usual.sampleNanos(random);
+    }
+}
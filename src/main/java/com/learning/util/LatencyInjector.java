@@ -0,0 +1,83 @@
+package com.learning.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides the latency and the outcome of simulated calls: every call gets a latency sampled from a
+ * {@link LatencyDistribution} and fails with the given probability. With a seed the sequence of decisions is
+ * reproducible, so a benchmark or a test sees the same tail on every run as long as calls are made in the same order.
+ * <p>
+ * Thread-safe.
+ */
+public class LatencyInjector {
+
+    private final LatencyDistribution distribution;
+    private final double errorRate;
+    private final Random random;
+
+    /**
+     * @param errorRate the probability of a call failing, in [0, 1]
+     * @param seed the seed of the decisions
+     */
+    public LatencyInjector(LatencyDistribution distribution, double errorRate, long seed) {
+        this(distribution, errorRate, new Random(seed));
+    }
+
+    /**
+     * Creates an injector with a random seed.
+     */
+    public LatencyInjector(LatencyDistribution distribution, double errorRate) {
+        this(distribution, errorRate, new Random());
+    }
+
+    private LatencyInjector(LatencyDistribution distribution, double errorRate, Random random) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Error rate must be in [0, 1]: " + errorRate);
+        }
+        this.distribution = distribution;
+        this.errorRate = errorRate;
+        this.random = random;
+    }
+
+    /**
+     * Calls take exactly the given time and never fail.
+     */
+    public static LatencyInjector constant(long latency, TimeUnit unit) {
+        return new LatencyInjector(LatencyDistribution.constant(latency, unit), 0, 0);
+    }
+
+    /**
+     * @return the decision for the next call
+     */
+    public Decision next() {
+        synchronized (random) {
+            long latencyNanos = Math.max(distribution.sampleNanos(random), 0);
+            boolean failed = errorRate > 0 && random.nextDouble() < errorRate;
+
+            return new Decision(latencyNanos, failed);
+        }
+    }
+
+    /**
+     * Latency and outcome of one call.
+     */
+    public static final class Decision {
+
+        private final long latencyNanos;
+        private final boolean failed;
+
+        private Decision(long latencyNanos, boolean failed) {
+            this.latencyNanos = latencyNanos;
+            this.failed = failed;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.learning.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The real time. One daemon thread completes the futures of every pending delay, however many there are.
+ */
+final class SystemTimeSource implements TimeSource {
+
+    private final ScheduledExecutorService timer;
+
+    SystemTimeSource() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "system-time-source-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.timer = Executors.unconfigurableScheduledExecutorService(executor);
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long duration, TimeUnit unit) throws InterruptedException {
+        // Thread.sleep rounds up to whole milliseconds, too coarse for a timer's sub-millisecond ticks
+        long deadline = System.nanoTime() + unit.toNanos(duration);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> delay(long duration, TimeUnit unit) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        ScheduledFuture<?> task = timer.schedule(() -> future.complete(null), duration, unit);
+        // a delay cancelled by the caller doesn't stay in the timer's queue
+        future.whenComplete((ignored, error) -> task.cancel(false));
+
+        return future;
+    }
+}
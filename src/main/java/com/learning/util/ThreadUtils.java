@@ -1,14 +1,54 @@
 package com.learning.util;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 public class ThreadUtils {
 
+    private static volatile TimeSource timeSource = TimeSource.SYSTEM;
+
     public static void simulateLongRunningJob(int timeout) {
+        simulateLongRunningJob(timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Blocks the calling thread for the given time of the current {@link TimeSource}, with sub-millisecond resolution.
+     */
+    public static void simulateLongRunningJob(long duration, TimeUnit unit) {
         try {
-            TimeUnit.SECONDS.sleep(timeout);
+            timeSource.sleep(duration, unit);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Non-blocking counterpart of {@link #simulateLongRunningJob}: no thread waits for the job, the returned future is
+     * completed by a shared timer thread when the time is up.
+     */
+    public static CompletableFuture<Void> simulateLongRunningJobAsync(int timeout) {
+        return delay(timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return a future completed by the shared timer thread after the delay, dependent actions that don't specify an
+     * executor run on that thread, so they must be short
+     */
+    public static CompletableFuture<Void> delay(long delay, TimeUnit unit) {
+        return timeSource.delay(delay, unit);
+    }
+
+    /**
+     * @return the time source of the simulated jobs and delays, the real time by default
+     */
+    public static TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * Makes simulated jobs and delays run against the given time source, e.g. a {@link VirtualTimeSource} in tests.
+     */
+    public static void setTimeSource(TimeSource timeSource) {
+        ThreadUtils.timeSource = timeSource;
+    }
 }
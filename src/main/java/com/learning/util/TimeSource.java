@@ -0,0 +1,29 @@
+package com.learning.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where simulated work gets its time from: the clock, blocking sleeps and non-blocking delays. {@link #SYSTEM} is the
+ * real time; a {@link VirtualTimeSource} lets tests run simulated seconds in milliseconds.
+ */
+public interface TimeSource {
+
+    TimeSource SYSTEM = new SystemTimeSource();
+
+    /**
+     * @return the current time in nanoseconds, only meaningful relative to other readings of the same source
+     */
+    long nanoTime();
+
+    /**
+     * Blocks the calling thread for the given time.
+     */
+    void sleep(long duration, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * @return a future completed after the given time without any thread waiting for it; dependent actions that don't
+     * specify an executor run on the source's timer thread, so they must be short
+     */
+    CompletableFuture<Void> delay(long duration, TimeUnit unit);
+}
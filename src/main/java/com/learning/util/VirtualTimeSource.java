@@ -0,0 +1,325 @@
+package com.learning.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Virtual time for tests: sleeps and delays don't take real time, the clock jumps straight to the next wakeup instead.
+ * <p>
+ * Every sleep and delay registers a wakeup at a virtual deadline. The clock moves only in two cases: the test calls
+ * {@link #advance}, or every participant is waiting on this source. Participants are the threads that called
+ * {@link #register()} and the tasks of executors wrapped by {@link #track}, from their submission to their end. A
+ * participant waits on the source while it sleeps on it or {@link #join joins} a future through it; a sleeping
+ * participant woken by the clock counts as running again before the clock can move on. So a 1 second job of a
+ * participant always finishes before a 3 second one started at the same time, whatever the real scheduling of the
+ * threads, and delays with the same deadline complete in the order they were registered. Without participants the
+ * clock moves only through {@link #advance}.
+ * <p>
+ * Waits of other threads go through the clock as well but don't hold it: such a thread woken by the clock may still be
+ * running when the clock moves on. A participant that waits on something else, a lock or a plain
+ * {@link CompletableFuture#join()}, holds the clock until it's done, so a participant must wait through this source
+ * for whatever needs virtual time. A tracked task queued behind waiting tasks holds the clock too, so a tracked pool
+ * needs a thread for every task that waits at the same time.
+ * <p>
+ * Delays complete on the advancing thread, so their dependent actions must not sleep on this source. A cancelled delay
+ * is dropped and doesn't move the clock.
+ */
+public class VirtualTimeSource implements TimeSource, AutoCloseable {
+
+    private final PriorityQueue<Wakeup> wakeups = new PriorityQueue<>();
+    private final ThreadLocal<Boolean> participant = ThreadLocal.withInitial(() -> false);
+    private final Thread advancer;
+
+    // guarded by this
+    private long now;
+    private long sequence;
+    private int participants;
+    private int running;
+    private boolean closed;
+
+    public VirtualTimeSource() {
+        this.advancer = new Thread(this::advanceWhenAllWait, "virtual-time-advancer");
+        this.advancer.setDaemon(true);
+        this.advancer.start();
+    }
+
+    @Override
+    public synchronized long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public void sleep(long duration, TimeUnit unit) throws InterruptedException {
+        boolean holdsClock = participant.get();
+        synchronized (this) {
+            Wakeup wakeup = register(unit.toNanos(duration), null, holdsClock);
+            if (wakeup.fired) {
+                return;
+            }
+            if (holdsClock) {
+                --running;
+            }
+            try {
+                while (!wakeup.fired) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                if (!wakeup.fired) {
+                    wakeups.remove(wakeup);
+                    if (holdsClock) {
+                        ++running;
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> delay(long duration, TimeUnit unit) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Wakeup wakeup;
+        synchronized (this) {
+            wakeup = register(unit.toNanos(duration), future, false);
+        }
+        // a delay cancelled by the caller must not move the clock
+        future.whenComplete((ignored, error) -> {
+            synchronized (this) {
+                if (!wakeup.fired) {
+                    wakeups.remove(wakeup);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Makes the calling thread a participant: the clock doesn't move on its own while the thread runs, only while it
+     * waits on this source.
+     * @throws IllegalStateException if the thread already is a participant
+     */
+    public void register() {
+        if (participant.get()) {
+            throw new IllegalStateException(Thread.currentThread().getName() + " is already registered");
+        }
+        participant.set(true);
+        synchronized (this) {
+            ++participants;
+            ++running;
+        }
+    }
+
+    /**
+     * Ends the participation of the calling thread, e.g. at the end of a test.
+     * @throws IllegalStateException if the thread isn't a participant
+     */
+    public void unregister() {
+        if (!participant.get()) {
+            throw new IllegalStateException(Thread.currentThread().getName() + " is not registered");
+        }
+        participant.set(false);
+        leave();
+    }
+
+    /**
+     * @return an executor whose tasks are participants from their submission to their end, so the clock can't move
+     * between submitting a task and the task's first sleep
+     */
+    public Executor track(Executor executor) {
+        return task -> {
+            synchronized (this) {
+                ++participants;
+                ++running;
+            }
+            Runnable tracked = () -> {
+                if (participant.get()) {
+                    // run in place by a participant, which is counted already
+                    leave();
+                    task.run();
+                    return;
+                }
+                participant.set(true);
+                try {
+                    task.run();
+                } finally {
+                    participant.set(false);
+                    leave();
+                }
+            };
+            try {
+                executor.execute(tracked);
+            } catch (RuntimeException e) {
+                leave();
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Waits for the future like {@link CompletableFuture#join()}. A participant waits on this source, so the clock can
+     * move to whatever completes the future.
+     */
+    public <T> T join(CompletableFuture<T> future) {
+        if (participant.get() && !future.isDone()) {
+            synchronized (this) {
+                --running;
+                notifyAll();
+            }
+            // counted as running from the completion on, so the clock waits for the participant to continue
+            future.whenComplete((ignored, error) -> {
+                synchronized (this) {
+                    ++running;
+                }
+            });
+        }
+
+        return future.join();
+    }
+
+    /**
+     * Moves the clock forward by the given time, firing the wakeups due on the way in order. After every wakeup the
+     * woken participants, other than the caller, get to wait on the source again before the clock moves on.
+     */
+    public void advance(long duration, TimeUnit unit) throws InterruptedException {
+        int self = participant.get() ? 1 : 0;
+        long target;
+        synchronized (this) {
+            target = now + unit.toNanos(duration);
+        }
+        while (true) {
+            List<CompletableFuture<Void>> due;
+            synchronized (this) {
+                while (!closed && running > self) {
+                    wait();
+                }
+                if (closed || wakeups.isEmpty() || wakeups.peek().deadline > target) {
+                    now = Math.max(now, target);
+                    return;
+                }
+
+                now = Math.max(now, wakeups.peek().deadline);
+                due = fire(now);
+            }
+            for (CompletableFuture<Void> future : due) {
+                future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * @return the number of sleeps and delays waiting for the clock
+     */
+    public synchronized int getPendingCount() {
+        return wakeups.size();
+    }
+
+    /**
+     * Stops the clock. Pending sleeps and delays are released right away, later ones don't wait at all, so no thread
+     * stays blocked on a source that no longer advances.
+     */
+    @Override
+    public void close() {
+        List<CompletableFuture<Void>> released;
+        synchronized (this) {
+            closed = true;
+            released = fire(Long.MAX_VALUE);
+        }
+        advancer.interrupt();
+        released.forEach(future -> future.complete(null));
+    }
+
+    private synchronized void leave() {
+        --participants;
+        --running;
+        notifyAll();
+    }
+
+    private Wakeup register(long durationNanos, CompletableFuture<Void> future, boolean holdsClock) {
+        Wakeup wakeup = new Wakeup(now + Math.max(durationNanos, 0), sequence++, future, holdsClock);
+        if (closed) {
+            wakeup.fired = true;
+            if (future != null) {
+                future.complete(null);
+            }
+            return wakeup;
+        }
+        wakeups.add(wakeup);
+        notifyAll();
+
+        return wakeup;
+    }
+
+    /**
+     * Fires the wakeups due by the deadline, a woken participant is running again from here on. Called with the lock
+     * held.
+     * @return the delays to complete, outside the lock
+     */
+    private List<CompletableFuture<Void>> fire(long deadline) {
+        List<CompletableFuture<Void>> due = new ArrayList<>();
+        while (!wakeups.isEmpty() && wakeups.peek().deadline <= deadline) {
+            Wakeup wakeup = wakeups.poll();
+            wakeup.fired = true;
+            if (wakeup.holdsClock) {
+                ++running;
+            }
+            if (wakeup.future != null) {
+                due.add(wakeup.future);
+            }
+        }
+        notifyAll();
+
+        return due;
+    }
+
+    private void advanceWhenAllWait() {
+        try {
+            while (true) {
+                List<CompletableFuture<Void>> due;
+                synchronized (this) {
+                    while (!closed && (participants == 0 || running > 0 || wakeups.isEmpty())) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+
+                    now = Math.max(now, wakeups.peek().deadline);
+                    due = fire(now);
+                }
+                for (CompletableFuture<Void> future : due) {
+                    future.complete(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Wakeup implements Comparable<Wakeup> {
+
+        private final long deadline;
+        private final long sequence;
+        private final CompletableFuture<Void> future;
+        private final boolean holdsClock;
+        private boolean fired;
+
+        private Wakeup(long deadline, long sequence, CompletableFuture<Void> future, boolean holdsClock) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.future = future;
+            this.holdsClock = holdsClock;
+        }
+
+        @Override
+        public int compareTo(Wakeup other) {
+            int byDeadline = Long.compare(deadline, other.deadline);
+
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+    }
+}
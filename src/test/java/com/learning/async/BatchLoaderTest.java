@@ -0,0 +1,153 @@
+package com.learning.async;
+
+import com.learning.model.User;
+import com.learning.service.UserService;
+import com.learning.util.VirtualTimeRule;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchLoaderTest {
+
+    @Rule
+    public VirtualTimeRule virtualTime = new VirtualTimeRule();
+
+    /**
+     * 100 loads of 10 distinct keys inside one window end up in a single call of the batch function with every key
+     * once, and every caller still gets its own value.
+     */
+    @Test
+    public void testGivenManyLoadsWithinWindow_WhenBatchIsDispatched_ThenOneCallLoadsEveryDistinctKeyOnce() {
+        List<Set<Integer>> calls = new CopyOnWriteArrayList<>();
+        BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+            calls.add(keys);
+            return CompletableFuture.completedFuture(
+                    keys.stream().collect(Collectors.toMap(key -> key, key -> "value " + key)));
+        }, 1000, 50, TimeUnit.MILLISECONDS);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            futures.add(loader.load(i % 10));
+        }
+
+        for (int i = 0; i < 100; ++i) {
+            assertThat(futures.get(i).join()).isEqualTo("value " + i % 10);
+        }
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0)).hasSize(10);
+        assertThat(loader.getLoadCount()).isEqualTo(100);
+        assertThat(loader.getBatchCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGivenMaxBatchSizeReached_WhenLoad_ThenBatchIsDispatchedWithoutWaitingAndFailuresReachEveryCaller() {
+        BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+            CompletableFuture<Map<Integer, String>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Backend is down"));
+            return failed;
+        }, 2, 1, TimeUnit.HOURS);
+
+        CompletableFuture<String> first = loader.load(1);
+        CompletableFuture<String> second = loader.load(2);
+
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(loader.getBatchCount()).isEqualTo(1);
+    }
+
+    /**
+     * A batch function that completes with no map, or with one that fails to be read, fails the loads of the batch
+     * instead of leaving them waiting forever.
+     */
+    @Test
+    public void testGivenBatchResultWithoutMapOrUnreadable_WhenBatchCompletes_ThenEveryLoadFails() {
+        BatchLoader<Integer, String> missing = new BatchLoader<>(
+                keys -> CompletableFuture.completedFuture(null), 2, 1, TimeUnit.HOURS);
+        CompletableFuture<String> first = missing.load(1);
+        CompletableFuture<String> second = missing.load(2);
+
+        assertThatThrownBy(first::join).hasCauseInstanceOf(NullPointerException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(NullPointerException.class);
+
+        Map<Integer, String> unreadable = new HashMap<Integer, String>() {
+            @Override
+            public String get(Object key) {
+                throw new IllegalStateException("Corrupt entry " + key);
+            }
+        };
+        BatchLoader<Integer, String> failing = new BatchLoader<>(
+                keys -> CompletableFuture.completedFuture(unreadable), 2, 1, TimeUnit.HOURS);
+        CompletableFuture<String> third = failing.load(3);
+        CompletableFuture<String> fourth = failing.load(4);
+
+        assertThatThrownBy(third::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(fourth::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Two callers load the same key: one gives up on its future, the other still gets the value. The batch is full, so
+     * it's dispatched at once and its pending delay is cancelled instead of firing an hour later.
+     */
+    @Test
+    public void testGivenDuplicateKeyInFullBatch_WhenOneCallerCancels_ThenOtherGetsValueAndDelayIsCancelled() {
+        List<Timeout> delays = new CopyOnWriteArrayList<>();
+        Timer timer = (task, delay, unit) -> {
+            Timeout timeout = Timeouts.getTimer().newTimeout(task, delay, unit);
+            delays.add(timeout);
+            return timeout;
+        };
+        CompletableFuture<Map<Integer, String>> result = new CompletableFuture<>();
+        BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> result, 2, 1, TimeUnit.HOURS, timer);
+
+        CompletableFuture<String> cancelled = loader.load(1);
+        CompletableFuture<String> kept = loader.load(1);
+        loader.load(2);
+        cancelled.cancel(true);
+        Map<Integer, String> values = new HashMap<>();
+        values.put(1, "one");
+        result.complete(values);
+
+        assertThat(kept.join()).isEqualTo("one");
+        assertThat(delays).hasSize(1);
+        assertThat(delays.get(0).isCancelled()).isTrue();
+    }
+
+    @Test
+    public void testGivenKeyMissingFromBatchResult_WhenLoad_ThenValueIsNull() {
+        BatchLoader<Integer, String> loader = new BatchLoader<>(
+                keys -> CompletableFuture.completedFuture(new HashMap<>()), 10, 1, TimeUnit.MILLISECONDS);
+
+        assertThat(loader.load(1).join()).isNull();
+    }
+
+    /**
+     * Single-user lookups of the service, made one by one, cost one backend round-trip for all of them.
+     */
+    @Test
+    public void testGivenBatchingEnabled_WhenFetchUsersOneByOne_ThenServiceMakesOneRoundTrip() {
+        BatchLoader<Long, User> loader = UserService.enableBatching(100, 50, TimeUnit.MILLISECONDS);
+        try {
+            List<CompletableFuture<User>> users = LongStream.range(1, 21)
+                    .mapToObj(UserService::getUserDetails)
+                    .collect(Collectors.toList());
+
+            assertThat(users.stream().mapToDouble(user -> virtualTime.join(user).getMoney()).sum())
+                    .isEqualTo(20 * 10000.00);
+            assertThat(loader.getBatchCount()).isEqualTo(1);
+        } finally {
+            UserService.disableBatching();
+        }
+    }
+}
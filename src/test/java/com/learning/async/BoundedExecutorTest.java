@@ -0,0 +1,91 @@
+package com.learning.async;
+
+import com.learning.model.User;
+import com.learning.service.CreditService;
+import com.learning.service.UserService;
+import com.learning.util.VirtualTimeRule;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BoundedExecutorTest {
+
+    @Rule
+    public VirtualTimeRule virtualTime = new VirtualTimeRule();
+
+    /**
+     * With its only thread busy and its queue full the pool rejects the next task. The rejected future fails instead
+     * of throwing, the queued task waits until the thread is free and its wait is recorded.
+     */
+    @Test
+    public void testGivenSaturatedPool_WhenTaskIsSubmitted_ThenItIsRejectedAndCounted() throws InterruptedException {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 1, new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<String> running = Futures.supplyAsync(() -> {
+                started.countDown();
+                await(release);
+                return "running";
+            }, executor);
+            CompletableFuture<String> queued = Futures.supplyAsync(() -> "queued", executor);
+            CompletableFuture<String> rejected = Futures.supplyAsync(() -> "rejected", executor);
+
+            assertThatThrownBy(rejected::join).hasCauseInstanceOf(RejectedExecutionException.class);
+            assertThat(executor.getRejectedCount()).isEqualTo(1);
+            assertThat(executor.getQueueDepth()).isEqualTo(1);
+            // the worker may not have picked up its first task yet
+            started.await();
+            assertThat(executor.getActiveCount()).isEqualTo(1);
+
+            TimeUnit.MILLISECONDS.sleep(50);
+            release.countDown();
+
+            assertThat(running.join()).isEqualTo("running");
+            assertThat(queued.join()).isEqualTo("queued");
+            assertThat(executor.getWaitTime().getCount()).isEqualTo(2);
+            assertThat(executor.getWaitTime().getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The credit service's pool is exhausted, its next call fails right away, but user lookups on their own pool are
+     * not affected.
+     */
+    @Test
+    public void testGivenCreditServicePoolExhausted_WhenUserIsFetched_ThenUserServiceIsUnaffected() {
+        Executor creditExecutor = CreditService.getExecutor();
+        BoundedExecutor exhausted = new BoundedExecutor("credit-test", 1, 0, new ThreadPoolExecutor.AbortPolicy());
+        CreditService.setExecutor(exhausted);
+        try {
+            CompletableFuture<Double> busy = CreditService.getUserCreditRating(new User(101, 50.0, 0));
+            CompletableFuture<Double> rejected = CreditService.getUserCreditRating(new User(102, 60.0, 0));
+            CompletableFuture<User> user = UserService.getUserDetails(103);
+
+            assertThatThrownBy(rejected::join).hasCauseInstanceOf(RejectedExecutionException.class);
+            assertThat(virtualTime.join(user).getId()).isEqualTo(103);
+            assertThat(virtualTime.join(busy)).isEqualTo(50.0);
+        } finally {
+            CreditService.setExecutor(creditExecutor);
+            exhausted.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.learning.async;
+
+import com.learning.model.User;
+import com.learning.service.CreditService;
+import com.learning.util.LatencyDistribution;
+import com.learning.util.LatencyInjector;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CircuitBreakerTest {
+
+    /**
+     * Half of the first four calls fail, which opens the circuit: the next call fails fast without being made. After
+     * the wait two trial calls are let through, a third is not, and their success closes the circuit again.
+     */
+    @Test
+    public void testGivenFailingBackend_WhenRateReachesThreshold_ThenCircuitOpensAndRecoversThroughHalfOpen() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = CircuitBreaker.newBuilder("test")
+                .slidingWindow(10, 4)
+                .failureRateThreshold(50)
+                .waitInOpen(30, TimeUnit.SECONDS)
+                .halfOpenCalls(2)
+                .ticker(now::get)
+                .build();
+        List<String> transitions = new CopyOnWriteArrayList<>();
+        breaker.addListener((source, from, to) -> transitions.add(from + "->" + to));
+        AtomicInteger made = new AtomicInteger();
+
+        for (int i = 0; i < 4; ++i) {
+            boolean fail = i % 2 == 0;
+            breaker.call(() -> {
+                made.incrementAndGet();
+                return fail ? Futures.failed(new IllegalStateException("down")) : CompletableFuture.completedFuture(1);
+            });
+        }
+        CompletableFuture<Integer> rejected = breaker.call(() -> {
+            made.incrementAndGet();
+            return CompletableFuture.completedFuture(1);
+        });
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(rejected::join).hasCauseInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(made).hasValue(4);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        breaker.call(() -> first);
+        breaker.call(() -> second);
+        CompletableFuture<Integer> third = breaker.call(() -> CompletableFuture.completedFuture(3));
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThatThrownBy(third::join).hasCauseInstanceOf(CircuitBreakerOpenException.class);
+
+        first.complete(1);
+        second.complete(2);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(transitions).containsExactly("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED");
+        assertThat(breaker.getNotPermittedCount()).isEqualTo(2);
+        assertThat(breaker.getFailureCount()).isEqualTo(2);
+        assertThat(breaker.getSuccessCount()).isEqualTo(4);
+    }
+
+    /**
+     * Calls that succeed but take longer than the slow call duration open the circuit too.
+     */
+    @Test
+    public void testGivenSlowSuccessfulCalls_WhenSlowRateReachesThreshold_ThenCircuitOpens() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = CircuitBreaker.newBuilder("test")
+                .slidingWindow(5, 5)
+                .slowCallRateThreshold(60, 1, TimeUnit.SECONDS)
+                .ticker(now::get)
+                .build();
+
+        for (int i = 0; i < 5; ++i) {
+            CompletableFuture<Integer> call = new CompletableFuture<>();
+            breaker.call(() -> call);
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(i < 3 ? 1500 : 10));
+            call.complete(i);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.getSlowCallCount()).isEqualTo(3);
+        assertThat(breaker.getFailureCount()).isZero();
+    }
+
+    /**
+     * Cancelled calls are neither failures nor successes, whether the caller gives up on them or the backend's future
+     * is cancelled, e.g. as the loser of a hedge: four of them leave the circuit closed. A cancelled trial call gives
+     * its permit back, so the half-open circuit can still close.
+     */
+    @Test
+    public void testGivenCancelledCalls_WhenOutcomesAreRecorded_ThenTheyDontCountAsFailures() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = CircuitBreaker.newBuilder("test")
+                .slidingWindow(4, 4)
+                .failureRateThreshold(50)
+                .waitInOpen(30, TimeUnit.SECONDS)
+                .halfOpenCalls(1)
+                .ticker(now::get)
+                .build();
+
+        for (int i = 0; i < 2; ++i) {
+            breaker.call(CompletableFuture::new).cancel(true);
+            CompletableFuture<Integer> loser = new CompletableFuture<>();
+            breaker.call(() -> loser);
+            loser.cancel(true);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getFailureCount()).isZero();
+        assertThat(breaker.getSuccessCount()).isZero();
+
+        for (int i = 0; i < 4; ++i) {
+            breaker.call(() -> Futures.failed(new IllegalStateException("down")));
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        breaker.call(CompletableFuture::new).cancel(true);
+        breaker.call(() -> CompletableFuture.completedFuture(1));
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getFailureCount()).isEqualTo(4);
+    }
+
+    /**
+     * Calls timed out by their callers count as failures, and slow ones, although the backend's futures never
+     * complete: four of them open the circuit, and the calls are cancelled. A timed-out trial call is recorded too,
+     * so the circuit opens again instead of waiting for its permit forever.
+     */
+    @Test
+    public void testGivenCallsTimedOutByCaller_WhenBackendNeverCompletes_ThenTheyCountAsSlowFailures() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = CircuitBreaker.newBuilder("test")
+                .slidingWindow(4, 4)
+                .failureRateThreshold(50)
+                .slowCallRateThreshold(100, 1, TimeUnit.SECONDS)
+                .waitInOpen(30, TimeUnit.SECONDS)
+                .halfOpenCalls(1)
+                .ticker(now::get)
+                .build();
+        List<CompletableFuture<Integer>> backends = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 4; ++i) {
+            CompletableFuture<Integer> call = breaker.call(() -> {
+                CompletableFuture<Integer> backend = new CompletableFuture<>();
+                backends.add(backend);
+                return backend;
+            });
+            now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            assertThatThrownBy(Timeouts.orTimeout(call, 1, TimeUnit.MILLISECONDS)::join)
+                    .hasCauseInstanceOf(TimeoutException.class);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.getFailureCount()).isEqualTo(4);
+        assertThat(breaker.getSlowCallCount()).isEqualTo(4);
+        assertThat(backends).hasSize(4).allMatch(CompletableFuture::isCancelled);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        breaker.call(CompletableFuture::new).completeExceptionally(new TimeoutException("trial timed out"));
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.getFailureCount()).isEqualTo(5);
+    }
+
+    /**
+     * Once the credit backend fails every call, the breaker opens and the fallback of a rating request fires without
+     * waiting for the backend.
+     */
+    @Test
+    public void testGivenDownCreditBackend_WhenCircuitIsOpen_ThenFallbackFiresImmediately() {
+        LatencyInjector latency = CreditService.getLatency();
+        try {
+            CreditService.setLatency(new LatencyInjector(
+                    LatencyDistribution.constant(100, TimeUnit.MICROSECONDS), 1, 1));
+            CreditService.setCircuitBreaker(CircuitBreaker.newBuilder("credit").slidingWindow(3, 3).build());
+            for (int id = 401; id <= 403; ++id) {
+                CreditService.getUserCreditRating(new User(id, 70.0, 0)).exceptionally(error -> 0.0).join();
+            }
+            CreditService.setLatency(new LatencyInjector(LatencyDistribution.constant(1, TimeUnit.HOURS), 0, 1));
+
+            double rating = CreditService.getUserCreditRating(new User(404, 70.0, 0))
+                    .exceptionally(error -> -1.0)
+                    .join();
+
+            assertThat(rating).isEqualTo(-1.0);
+            assertThat(CreditService.getCircuitBreaker().getNotPermittedCount()).isEqualTo(1);
+        } finally {
+            CreditService.setCircuitBreaker(null);
+            CreditService.setLatency(latency);
+        }
+    }
+}
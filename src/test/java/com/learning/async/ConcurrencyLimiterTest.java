@@ -0,0 +1,159 @@
+package com.learning.async;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConcurrencyLimiterTest {
+
+    /**
+     * With two calls in flight at a limit of 2 the third waits in the queue and the fourth is shed. The queued call
+     * starts as soon as one in flight completes.
+     */
+    @Test
+    public void testGivenLimitReached_WhenMoreCallsArrive_ThenTheyAreQueuedThenShed() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test",
+                LimitAlgorithm.aimd(2, 2, 0.5, 1, TimeUnit.SECONDS), 2, 1);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+
+        CompletableFuture<Integer> running = limiter.call(() -> first);
+        limiter.call(() -> second);
+        CompletableFuture<Integer> queued = limiter.call(() -> CompletableFuture.completedFuture(3));
+        CompletableFuture<Integer> shed = limiter.call(() -> CompletableFuture.completedFuture(4));
+
+        assertThatThrownBy(shed::join).hasCauseInstanceOf(ConcurrencyLimitException.class);
+        assertThat(queued).isNotDone();
+        assertThat(limiter.getQueueSize()).isEqualTo(1);
+
+        first.complete(1);
+
+        assertThat(running.join()).isEqualTo(1);
+        assertThat(queued.join()).isEqualTo(3);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.getShedCount()).isEqualTo(1);
+    }
+
+    /**
+     * A queued call cancelled by its caller leaves the queue: it's never made, and the call behind it takes the slot
+     * freed by the running call.
+     */
+    @Test
+    public void testGivenQueuedCall_WhenItIsCancelled_ThenItIsNeverMade() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test",
+                LimitAlgorithm.aimd(1, 1, 0.5, 1, TimeUnit.SECONDS), 1, 2);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        AtomicBoolean made = new AtomicBoolean();
+
+        limiter.call(() -> first);
+        CompletableFuture<Integer> cancelled = limiter.call(() -> {
+            made.set(true);
+            return CompletableFuture.completedFuture(2);
+        });
+        CompletableFuture<Integer> next = limiter.call(() -> CompletableFuture.completedFuture(3));
+        cancelled.cancel(true);
+
+        assertThat(limiter.getQueueSize()).isEqualTo(1);
+
+        first.complete(1);
+
+        assertThat(next.join()).isEqualTo(3);
+        assertThat(made).isFalse();
+        assertThat(limiter.getQueueSize()).isZero();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    /**
+     * Calls in flight whose callers give up on them, one timed out and one cancelled, leave the limit right away
+     * although the backend never answers: the calls are cancelled, the timeout is sampled as a drop, and the next
+     * call is made instead of shed.
+     */
+    @Test
+    public void testGivenCallsInFlight_WhenCallersTimeOutOrCancelThem_ThenTheyLeaveTheLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test",
+                LimitAlgorithm.aimd(2, 2, 0.5, 1, TimeUnit.SECONDS), 2, 0);
+        CompletableFuture<Integer> hung = new CompletableFuture<>();
+        CompletableFuture<Integer> loser = new CompletableFuture<>();
+
+        CompletableFuture<Integer> timedOut = Timeouts.orTimeout(limiter.call(() -> hung), 1, TimeUnit.MILLISECONDS);
+        limiter.call(() -> loser).cancel(true);
+
+        assertThatThrownBy(timedOut::join).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(hung).isCancelled();
+        assertThat(loser).isCancelled();
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getDroppedCount()).isEqualTo(1);
+        assertThat(limiter.call(() -> CompletableFuture.completedFuture(3)).join()).isEqualTo(3);
+    }
+
+    /**
+     * A hundred thousand queued calls that complete right away are started one after the other by a single drain,
+     * instead of each one draining the next from within its completion until the stack overflows.
+     */
+    @Test
+    public void testGivenLongQueueOfQuickCalls_WhenItDrains_ThenEveryCallCompletes() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test",
+                LimitAlgorithm.aimd(1, 1, 0.5, 1, TimeUnit.SECONDS), 1, 100_000);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+
+        limiter.call(() -> first);
+        List<CompletableFuture<Integer>> queued = IntStream.range(0, 100_000)
+                .mapToObj(i -> limiter.call(() -> CompletableFuture.completedFuture(i)))
+                .collect(Collectors.toList());
+        first.complete(-1);
+
+        assertThat(queued.stream().mapToLong(CompletableFuture::join).sum()).isEqualTo(99_999L * 100_000 / 2);
+        assertThat(limiter.getQueueSize()).isZero();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    /**
+     * A backend that serves 10 calls at once in 10ms and queues the rest: beyond 10 calls in flight the round-trip
+     * time grows with the concurrency. Every algorithm grows to that knee, follows it when the backend scales up to
+     * 30, and comes back down when it scales down again. The latency-based ones also hold it when the calls then take
+     * 30ms instead of 10ms.
+     */
+    @Test
+    public void testGivenBackendWithKnee_WhenLimitAdapts_ThenItSettlesNearTheKnee() {
+        LimitAlgorithm[] algorithms = {
+                LimitAlgorithm.aimd(1, 200, 0.9, 15, TimeUnit.MILLISECONDS),
+                LimitAlgorithm.vegas(1, 200),
+                LimitAlgorithm.gradient(1, 200)
+        };
+        for (LimitAlgorithm algorithm : algorithms) {
+            String name = algorithm.getClass().getSimpleName();
+            int limit = simulate(algorithm, 1, 10, 10);
+            assertThat(limit).as(name).isBetween(8, 25);
+            limit = simulate(algorithm, limit, 30, 10);
+            assertThat(limit).as(name).isBetween(25, 60);
+            limit = simulate(algorithm, limit, 10, 10);
+            assertThat(limit).as(name).isBetween(8, 25);
+            // AIMD only sees its fixed timeout, which 30ms calls always exceed
+            if (!(algorithm instanceof AimdLimit)) {
+                limit = simulate(algorithm, limit, 10, 30);
+                assertThat(limit).as(name).isBetween(8, 25);
+            }
+        }
+    }
+
+    /**
+     * Feeds the algorithm 2000 samples of a fully used limit, with calls taking the given time up to the knee.
+     * @return the limit it ends with
+     */
+    private static int simulate(LimitAlgorithm algorithm, int limit, int knee, long rttMillis) {
+        for (int i = 0; i < 2000; ++i) {
+            long rtt = TimeUnit.MILLISECONDS.toNanos(rttMillis) * Math.max(limit, knee) / knee;
+            limit = algorithm.update(limit, rtt, limit, false);
+        }
+
+        return limit;
+    }
+}
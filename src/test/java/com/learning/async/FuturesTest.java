@@ -0,0 +1,86 @@
+package com.learning.async;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FuturesTest {
+
+    /**
+     * allAsList() waits for every future like allOf(), and the failure of the second one fails the result only once
+     * the third has completed too.
+     */
+    @Test
+    public void testGivenOneFailingFuture_WhenAllAsList_ThenResultFailsOnceAllHaveCompleted() {
+        CompletableFuture<Integer> third = new CompletableFuture<>();
+        List<CompletableFuture<Integer>> futures = Arrays.asList(CompletableFuture.completedFuture(1),
+                Futures.failed(new IllegalStateException("second down")), third);
+
+        CompletableFuture<List<Integer>> all = Futures.allAsList(futures);
+
+        assertThat(all).isNotDone();
+        third.complete(3);
+        assertThatThrownBy(all::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(Futures.allAsList(Arrays.asList(futures.get(0), third)).join()).containsExactly(1, 3);
+    }
+
+    /**
+     * allSuccessful() never fails: it holds the values of the futures that succeeded and the errors of the others.
+     */
+    @Test
+    public void testGivenOneFailingFuture_WhenAllSuccessful_ThenPartialResultsAndErrorsAreReturned() {
+        IllegalStateException error = new IllegalStateException("second down");
+        List<CompletableFuture<Integer>> futures = Arrays.asList(CompletableFuture.completedFuture(1),
+                Futures.failed(error), CompletableFuture.completedFuture(3));
+
+        Futures.Outcomes<Integer> outcomes = Futures.allSuccessful(futures).join();
+
+        assertThat(outcomes.getValues()).containsExactly(1, 3);
+        assertThat(outcomes.getErrors()).containsExactly(error);
+        assertThat(outcomes.isSuccessful(1)).isFalse();
+        assertThat(outcomes.getValue(2)).isEqualTo(3);
+    }
+
+    /**
+     * allOrFailFast() fails as soon as the second future fails, without waiting for the others, which are cancelled.
+     */
+    @Test
+    public void testGivenOneFailingFuture_WhenAllOrFailFast_ThenResultFailsRightAwayAndOthersAreCancelled() {
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        CompletableFuture<Integer> third = new CompletableFuture<>();
+
+        CompletableFuture<List<Integer>> all = Futures.allOrFailFast(Arrays.asList(first, second, third));
+        second.completeExceptionally(new IllegalStateException("second down"));
+
+        assertThatThrownBy(all::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(first).isCancelled();
+        assertThat(third).isCancelled();
+    }
+
+    /**
+     * A fan-out of 100 000 futures, completed one after another, costs one callback per future and no recursion.
+     */
+    @Test
+    public void testGivenLargeFanOut_WhenAllAsList_ThenAllValuesAreCollectedInOrder() {
+        List<CompletableFuture<Integer>> futures = IntStream.range(0, 100_000)
+                .mapToObj(i -> new CompletableFuture<Integer>())
+                .collect(Collectors.toList());
+
+        CompletableFuture<List<Integer>> all = Futures.allOrFailFast(futures);
+        for (int i = futures.size() - 1; i >= 0; --i) {
+            futures.get(i).complete(i);
+        }
+
+        List<Integer> values = all.join();
+        assertThat(values).hasSize(100_000);
+        assertThat(values.get(0)).isEqualTo(0);
+        assertThat(values.get(99_999)).isEqualTo(99_999);
+    }
+}
@@ -0,0 +1,90 @@
+package com.learning.async;
+
+import com.learning.util.VirtualTimeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HedgerTest {
+
+    /**
+     * The first attempt stalls, so after the delay a second one is sent; it answers, and the stalled attempt is
+     * cancelled.
+     */
+    @Test
+    public void testGivenStalledCall_WhenDelayElapses_ThenHedgeWinsAndStalledCallIsCancelled() {
+        Hedger hedger = new Hedger(95, 50, TimeUnit.MILLISECONDS);
+        List<CompletableFuture<String>> attempts = new ArrayList<>();
+
+        CompletableFuture<String> result = hedger.call(() -> {
+            CompletableFuture<String> attempt = new CompletableFuture<>();
+            synchronized (attempts) {
+                attempts.add(attempt);
+                if (attempts.size() == 2) {
+                    attempt.complete("hedge");
+                }
+            }
+            return attempt;
+        });
+
+        assertThat(result.join()).isEqualTo("hedge");
+        assertThat(attempts).hasSize(2);
+        assertThat(attempts.get(0).isCancelled()).isTrue();
+        assertThat(hedger.getHedgeCount()).isEqualTo(1);
+        assertThat(hedger.getHedgeWinCount()).isEqualTo(1);
+    }
+
+    /**
+     * Calls that answer in time are made once. Once enough latencies are recorded, the delay follows their 95th
+     * percentile instead of the initial delay.
+     */
+    @Test
+    public void testGivenFastCalls_WhenTheyAnswerInTime_ThenNoHedgeIsSentAndDelayAdapts() {
+        Hedger hedger = new Hedger(95, 1, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 50; ++i) {
+            assertThat(hedger.call(() -> CompletableFuture.completedFuture(1)).join()).isEqualTo(1);
+        }
+
+        assertThat(hedger.getCallCount()).isEqualTo(50);
+        assertThat(hedger.getHedgeCount()).isZero();
+        assertThat(hedger.getDelay(TimeUnit.MILLISECONDS)).isLessThan(100);
+    }
+
+    /**
+     * The stalled attempt loses to the hedge after 80ms. It's still recorded, as running 80ms, so the slow attempts
+     * keep their weight in the percentile the delay is taken from.
+     */
+    @Test
+    public void testGivenHedgeWins_WhenLoserIsCancelled_ThenItsRunTimeIsRecorded() throws InterruptedException {
+        try (VirtualTimeSource time = new VirtualTimeSource()) {
+            List<Runnable> hedges = new ArrayList<>();
+            Timer timer = (task, delay, unit) -> {
+                hedges.add(task);
+                return Timeouts.getTimer().newTimeout(() -> { }, delay, unit);
+            };
+            Hedger hedger = new Hedger(95, 50, TimeUnit.MILLISECONDS, timer, time);
+            List<CompletableFuture<String>> attempts = new ArrayList<>();
+
+            CompletableFuture<String> result = hedger.call(() -> {
+                CompletableFuture<String> attempt = new CompletableFuture<>();
+                attempts.add(attempt);
+                if (attempts.size() == 2) {
+                    attempt.complete("hedge");
+                }
+                return attempt;
+            });
+            time.advance(80, TimeUnit.MILLISECONDS);
+            hedges.get(0).run();
+
+            assertThat(result.join()).isEqualTo("hedge");
+            assertThat(attempts.get(0).isCancelled()).isTrue();
+            assertThat(hedger.getLatency().getCount()).isEqualTo(2);
+            assertThat(hedger.getLatency().getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(80));
+        }
+    }
+}
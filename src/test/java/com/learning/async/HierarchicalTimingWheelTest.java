@@ -0,0 +1,89 @@
+package com.learning.async;
+
+import com.learning.util.VirtualTimeSource;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HierarchicalTimingWheelTest {
+
+    /**
+     * With a 10 microsecond tick the first wheel spans 2.56ms and the second 655ms, so the timeouts below sit on
+     * three levels. They fire in the order of their deadlines, after them and not more than a few ticks late.
+     */
+    @Test
+    public void testGivenTimeoutsOnDifferentLevels_WhenTheyCascade_ThenTheyFireInOrderNotEarly()
+            throws InterruptedException {
+        try (HierarchicalTimingWheel timer = new HierarchicalTimingWheel("test-wheel", 10, TimeUnit.MICROSECONDS)) {
+            long[] delaysMillis = {700, 1, 120, 5};
+            List<Long> fired = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(delaysMillis.length);
+            long start = System.nanoTime();
+
+            for (long delay : delaysMillis) {
+                timer.newTimeout(() -> {
+                    long elapsed = System.nanoTime() - start;
+                    assertThat(elapsed).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(delay));
+                    fired.add(delay);
+                    done.countDown();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+
+            assertThat(done.await(2, TimeUnit.SECONDS)).isTrue();
+            assertThat(fired).containsExactly(1L, 5L, 120L, 700L);
+            assertThat(timer.getPendingCount()).isZero();
+        }
+    }
+
+    /**
+     * Ten thousand cancelled timeouts never run, only the one left fires. Their delays leave the test thread time to
+     * cancel them even when it's descheduled for a while.
+     */
+    @Test
+    public void testGivenCancelledTimeouts_WhenDeadlinesPass_ThenOnlyTheRemainingOneFires()
+            throws InterruptedException {
+        try (HierarchicalTimingWheel timer = new HierarchicalTimingWheel("test-wheel")) {
+            AtomicInteger runs = new AtomicInteger();
+            CountDownLatch kept = new CountDownLatch(1);
+
+            for (int i = 0; i < 10_000; ++i) {
+                Timeout timeout = timer.newTimeout(runs::incrementAndGet, 100 + i % 100, TimeUnit.MILLISECONDS);
+                assertThat(timeout.cancel()).isTrue();
+                assertThat(timeout.cancel()).isFalse();
+            }
+            timer.newTimeout(kept::countDown, 250, TimeUnit.MILLISECONDS);
+
+            assertThat(kept.await(1, TimeUnit.SECONDS)).isTrue();
+            assertThat(runs).hasValue(0);
+            assertThat(timer.getPendingCount()).isZero();
+        }
+    }
+
+    /**
+     * On a virtual clock half an hour of timeouts takes no real time. Each one fires once the clock is advanced past
+     * its deadline, the later one waits for the clock.
+     */
+    @Test
+    public void testGivenVirtualTimeSource_WhenClockIsAdvanced_ThenTimeoutsFireOnItsTime() throws InterruptedException {
+        try (VirtualTimeSource time = new VirtualTimeSource();
+             HierarchicalTimingWheel timer = new HierarchicalTimingWheel("test-wheel", 1, TimeUnit.SECONDS, time)) {
+            CountDownLatch first = new CountDownLatch(1);
+            CountDownLatch second = new CountDownLatch(1);
+            timer.newTimeout(second::countDown, 30, TimeUnit.MINUTES);
+            timer.newTimeout(first::countDown, 10, TimeUnit.MINUTES);
+
+            time.advance(20, TimeUnit.MINUTES);
+            assertThat(first.await(1, TimeUnit.SECONDS)).isTrue();
+            assertThat(timer.getPendingCount()).isEqualTo(1);
+
+            time.advance(20, TimeUnit.MINUTES);
+            assertThat(second.await(1, TimeUnit.SECONDS)).isTrue();
+            assertThat(timer.getPendingCount()).isZero();
+        }
+    }
+}
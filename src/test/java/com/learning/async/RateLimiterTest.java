@@ -0,0 +1,70 @@
+package com.learning.async;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RateLimiterTest {
+
+    /**
+     * An idle limiter hands out its burst at once and then one permit per interval. Threads racing for permits on a
+     * stopped clock get exactly the burst between them, no more.
+     */
+    @Test
+    public void testGivenBurst_WhenThreadsRaceForPermits_ThenExactlyTheBurstIsHandedOut() throws InterruptedException {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = new RateLimiter(10, 1000, now::get, Timeouts.getTimer());
+        LongAdder granted = new LongAdder();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100_000; ++j) {
+                    if (limiter.tryAcquire()) {
+                        granted.increment();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(granted.sum()).isEqualTo(1000);
+        assertThat(limiter.getRejectedCount()).isEqualTo(399_000);
+        assertThat(limiter.getAvailablePermits()).isZero();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(250));
+        assertThat(limiter.getAvailablePermits()).isEqualTo(2);
+        assertThat(limiter.tryAcquire(2)).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+    }
+
+    /**
+     * Asynchronous acquisitions beyond the burst wait on the timer: at 100 permits per second the tenth of ten
+     * requests gets its permit after 90ms, without a thread waiting for it.
+     */
+    @Test
+    public void testGivenAsyncAcquisitions_WhenBeyondBurst_ThenTimerReleasesThemAtTheRate() {
+        RateLimiter limiter = new RateLimiter(100, 1);
+        long start = System.nanoTime();
+
+        List<CompletableFuture<Void>> permits = IntStream.range(0, 10)
+                .mapToObj(i -> limiter.acquireAsync())
+                .collect(Collectors.toList());
+
+        assertThat(permits.get(0)).isDone();
+        assertThat(permits.get(9)).isNotDone();
+        permits.forEach(CompletableFuture::join);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(90));
+        assertThat(limiter.getAcquiredCount()).isEqualTo(10);
+    }
+}
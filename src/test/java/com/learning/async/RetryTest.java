@@ -0,0 +1,112 @@
+package com.learning.async;
+
+import com.learning.model.User;
+import com.learning.service.CreditService;
+import com.learning.service.SimulatedBackendException;
+import com.learning.util.LatencyDistribution;
+import com.learning.util.LatencyInjector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RetryTest {
+
+    /**
+     * Two transient failures and a hung attempt are retried until the fourth attempt succeeds, an error the predicate
+     * rejects isn't retried at all.
+     */
+    @Test
+    public void testGivenTransientFailures_WhenCallIsRetried_ThenOnlyRetryableErrorsAreRetried() {
+        Retry retry = Retry.newBuilder()
+                .maxAttempts(4)
+                .backoff(1, 5, TimeUnit.MILLISECONDS)
+                .attemptTimeout(50, TimeUnit.MILLISECONDS)
+                .retryOn(error -> !(error instanceof IllegalArgumentException))
+                .build();
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = retry.call(() -> {
+            switch (attempts.incrementAndGet()) {
+                case 1:
+                case 2:
+                    return Futures.failed(new IllegalStateException("transient"));
+                case 3:
+                    return new CompletableFuture<>();
+                default:
+                    return CompletableFuture.completedFuture("answer");
+            }
+        });
+
+        assertThat(result.join()).isEqualTo("answer");
+        assertThat(attempts).hasValue(4);
+        assertThat(retry.getRetryCount()).isEqualTo(3);
+
+        AtomicInteger rejected = new AtomicInteger();
+        CompletableFuture<String> invalid = retry.call(() -> {
+            rejected.incrementAndGet();
+            return Futures.failed(new IllegalArgumentException("invalid"));
+        });
+
+        assertThatThrownBy(invalid::join).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(rejected).hasValue(1);
+    }
+
+    /**
+     * The backoff doubles up to its cap. With a budget of one retry per ten calls and no minimum rate, an outage of
+     * 100 calls is retried 10 times, not 100.
+     */
+    @Test
+    public void testGivenRetryBudget_WhenEveryCallFails_ThenRetriesAreCappedByRatio() {
+        RetryBudget budget = new RetryBudget(0.1, 0);
+        Retry retry = Retry.newBuilder()
+                .maxAttempts(2)
+                .backoff(1, 4, TimeUnit.MILLISECONDS)
+                .budget(budget)
+                .build();
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 100; ++i) {
+            CompletableFuture<Object> call = retry.call(() -> {
+                attempts.incrementAndGet();
+                return Futures.failed(new IllegalStateException("down"));
+            });
+            assertThatThrownBy(call::join).hasCauseInstanceOf(IllegalStateException.class);
+        }
+
+        assertThat(retry.getBackoff(1, TimeUnit.MILLISECONDS)).isEqualTo(1);
+        assertThat(retry.getBackoff(3, TimeUnit.MILLISECONDS)).isEqualTo(4);
+        assertThat(retry.getBackoff(60, TimeUnit.MILLISECONDS)).isEqualTo(4);
+        assertThat(retry.getRetryCount()).isEqualTo(10);
+        assertThat(attempts).hasValue(110);
+        assertThat(budget.getExhaustedCount()).isEqualTo(90);
+    }
+
+    /**
+     * With half of the credit backend calls failing, a retry policy on the service turns them into successes.
+     */
+    @Test
+    public void testGivenFlakyCreditBackend_WhenRetryIsSet_ThenRatingsAreFetched() {
+        LatencyInjector latency = CreditService.getLatency();
+        try {
+            CreditService.setLatency(new LatencyInjector(
+                    LatencyDistribution.constant(200, TimeUnit.MICROSECONDS), 0.5, 7));
+            CreditService.setRetry(Retry.newBuilder()
+                    .maxAttempts(10)
+                    .backoff(1, 10, TimeUnit.MILLISECONDS)
+                    .retryOn(error -> error instanceof SimulatedBackendException)
+                    .build());
+
+            for (int id = 301; id <= 310; ++id) {
+                assertThat(CreditService.getUserCreditRating(new User(id, 70.0, 0)).join()).isEqualTo(70.0);
+            }
+            assertThat(CreditService.getRetry().getRetryCount()).isPositive();
+        } finally {
+            CreditService.setRetry(null);
+            CreditService.setLatency(latency);
+        }
+    }
+}
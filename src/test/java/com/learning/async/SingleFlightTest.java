@@ -0,0 +1,64 @@
+package com.learning.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTest {
+
+    /**
+     * Hundreds of callers of the same key while the call is in flight start it only once and all get its result.
+     * Once it has completed the key is free again.
+     */
+    @Test
+    public void testGivenCallInFlight_WhenSameKeyIsRequestedAgain_ThenCallersAttachToIt() {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<String> backend = new CompletableFuture<>();
+
+        List<CompletableFuture<String>> callers = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            callers.add(singleFlight.execute(1L, () -> {
+                started.incrementAndGet();
+                return backend;
+            }));
+        }
+        callers.get(0).cancel(false);
+        backend.complete("user 1");
+
+        assertThat(started).hasValue(1);
+        assertThat(callers.get(299).join()).isEqualTo("user 1");
+        assertThat(singleFlight.getInFlightCount()).isZero();
+        assertThat(singleFlight.getCallCount()).isEqualTo(300);
+        assertThat(singleFlight.getExecutionCount()).isEqualTo(1);
+
+        singleFlight.execute(1L, () -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("user 1 again");
+        });
+        assertThat(started).hasValue(2);
+    }
+
+    @Test
+    public void testGivenCallFails_WhenItCompletes_ThenEveryCallerFailsAndKeyIsReleased() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> backend = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.execute("rate", () -> backend);
+        CompletableFuture<String> second = singleFlight.execute("rate", () -> CompletableFuture.completedFuture("?"));
+        backend.completeExceptionally(new IllegalStateException("Backend is down"));
+
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(singleFlight.getInFlightCount()).isZero();
+        assertThatThrownBy(() -> singleFlight.execute("rate", () -> {
+            throw new IllegalArgumentException("Can't even start");
+        }).join()).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(singleFlight.getInFlightCount()).isZero();
+    }
+}
@@ -0,0 +1,99 @@
+package com.learning.async;
+
+import com.learning.util.ThreadUtils;
+import com.learning.util.TimeSource;
+import com.learning.util.VirtualTimeSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TimeoutsTest {
+
+    /**
+     * A future that never completes fails with a timeout, one that completes in time cancels its timeout, so it
+     * doesn't stay pending in the timer.
+     */
+    @Test
+    public void testGivenHangingFuture_WhenTimeoutElapses_ThenItFailsAndCompletedOnesLeaveNoTimer() {
+        try (HierarchicalTimingWheel timer = new HierarchicalTimingWheel("test-timer")) {
+            long start = System.nanoTime();
+            CompletableFuture<String> hanging = Timeouts.orTimeout(new CompletableFuture<>(), 50,
+                    TimeUnit.MILLISECONDS, timer);
+
+            assertThatThrownBy(hanging::join).hasCauseInstanceOf(TimeoutException.class);
+            assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+
+            CompletableFuture<String> answered = Timeouts.orTimeout(new CompletableFuture<>(), 1,
+                    TimeUnit.HOURS, timer);
+            assertThat(timer.getPendingCount()).isEqualTo(1);
+            answered.complete("answer");
+
+            assertThat(answered.join()).isEqualTo("answer");
+            assertThat(timer.getPendingCount()).isZero();
+        }
+    }
+
+    /**
+     * Two stages of 150ms each don't fit in a 200ms deadline: the second stage gets only the time left and fails,
+     * although each stage alone would fit, and a stage whose input arrives after the deadline isn't called at all.
+     */
+    @Test
+    public void testGivenDeadline_WhenChainOutlivesIt_ThenLaterStagesGetOnlyTheTimeLeft() {
+        Deadline deadline = Deadline.after(200, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+
+        CompletableFuture<Integer> chain = deadline.bound(stage(1))
+                .thenCompose(deadline.bind(this::stage));
+
+        assertThatThrownBy(chain::join).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(290));
+
+        AtomicBoolean called = new AtomicBoolean();
+        CompletableFuture<Integer> late = CompletableFuture.completedFuture(1)
+                .thenCompose(deadline.bind(value -> {
+                    called.set(true);
+                    return stage(value);
+                }));
+
+        assertThatThrownBy(late::join).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(called).isFalse();
+        assertThat(deadline.remaining(TimeUnit.NANOSECONDS)).isZero();
+    }
+
+    /**
+     * A deadline made without a timer runs on the configured time source: on a virtual clock an hour long deadline
+     * expires once the clock is advanced by an hour, without taking any real time.
+     */
+    @Test
+    public void testGivenVirtualTimeSource_WhenClockPassesDeadline_ThenDefaultDeadlineExpiresOnIt()
+            throws InterruptedException {
+        TimeSource previous = ThreadUtils.getTimeSource();
+        try (VirtualTimeSource time = new VirtualTimeSource()) {
+            ThreadUtils.setTimeSource(time);
+            Deadline deadline = Deadline.after(1, TimeUnit.HOURS);
+            CompletableFuture<String> call = deadline.bound(new CompletableFuture<>());
+
+            time.advance(59, TimeUnit.MINUTES);
+            assertThat(call).isNotDone();
+            assertThat(deadline.remaining(TimeUnit.MINUTES)).isEqualTo(1);
+
+            time.advance(1, TimeUnit.MINUTES);
+            assertThatThrownBy(call::join).hasCauseInstanceOf(TimeoutException.class);
+            assertThat(deadline.isExpired()).isTrue();
+        } finally {
+            ThreadUtils.setTimeSource(previous);
+        }
+    }
+
+    private CompletableFuture<Integer> stage(int value) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        Timeouts.getTimer().newTimeout(() -> future.complete(value + 1), 150, TimeUnit.MILLISECONDS);
+
+        return future;
+    }
+}
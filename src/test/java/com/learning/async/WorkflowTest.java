@@ -0,0 +1,96 @@
+package com.learning.async;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WorkflowTest {
+
+    /**
+     * The rating depends on the user, the rate on nothing, and the offer on both. The user and the rate start together,
+     * the rating as soon as the user is there, and the offer only once the rating and the rate are. The rating takes
+     * longer than the rate, so the critical path runs through the user and the rating.
+     */
+    @Test
+    public void testGivenDiamondOfCalls_WhenExecuted_ThenIndependentNodesRunInParallelAndCriticalPathIsReported() {
+        AtomicLong now = new AtomicLong();
+        List<String> started = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> user = new CompletableFuture<>();
+        CompletableFuture<Double> rating = new CompletableFuture<>();
+        CompletableFuture<Double> rate = new CompletableFuture<>();
+        Workflow.Builder builder = Workflow.newBuilder().ticker(now::get);
+        Workflow.Node<String> userNode = builder.node("user", () -> {
+            started.add("user");
+            return user;
+        });
+        Workflow.Node<Double> ratingNode = builder.node("rating", userNode, name -> {
+            started.add("rating of " + name);
+            return rating;
+        });
+        Workflow.Node<Double> rateNode = builder.node("rate", () -> {
+            started.add("rate");
+            return rate;
+        });
+        Workflow.Node<Double> offerNode = builder.node("offer", ratingNode, rateNode, (userRating, interestRate) -> {
+            started.add("offer");
+            return CompletableFuture.completedFuture(userRating * interestRate);
+        });
+
+        Workflow.Execution execution = builder.build().execute();
+
+        assertThat(started).containsExactly("user", "rate");
+        now.set(TimeUnit.MILLISECONDS.toNanos(100));
+        user.complete("John");
+        assertThat(started).containsExactly("user", "rate", "rating of John");
+        now.set(TimeUnit.MILLISECONDS.toNanos(150));
+        rate.complete(13.0);
+        assertThat(started).doesNotContain("offer");
+        now.set(TimeUnit.MILLISECONDS.toNanos(300));
+        rating.complete(100.0);
+
+        assertThat(execution.get(offerNode).join()).isEqualTo(1300.0);
+        assertThat(execution.toCompletableFuture()).isCompleted();
+        assertThat(execution.getCriticalPath()).containsExactly(userNode, ratingNode, offerNode);
+        assertThat(execution.getRunTime(ratingNode, TimeUnit.MILLISECONDS)).isEqualTo(200);
+        assertThat(execution.getElapsed(TimeUnit.MILLISECONDS)).isEqualTo(300);
+        assertThat(execution).hasToString("user 100ms -> rating 200ms -> offer 0ms");
+    }
+
+    /**
+     * The rating fails while the rate is still running: the offer is cancelled without being started, the rate is
+     * cancelled as nothing needs it anymore, and the execution fails with the rating's error. The audit, which only
+     * depends on the user, still runs.
+     */
+    @Test
+    public void testGivenFailingNode_WhenExecuted_ThenDownstreamAndUnneededNodesAreCancelled() {
+        List<String> started = new CopyOnWriteArrayList<>();
+        CompletableFuture<Double> rate = new CompletableFuture<>();
+        Workflow.Builder builder = Workflow.newBuilder();
+        Workflow.Node<Double> rateNode = builder.node("rate", () -> rate);
+        Workflow.Node<String> userNode = builder.node("user", () -> CompletableFuture.completedFuture("John"));
+        Workflow.Node<Double> ratingNode = builder.node("rating", userNode,
+                name -> Futures.failed(new IllegalStateException("rating down")));
+        Workflow.Node<Double> offerNode = builder.node("offer", ratingNode, rateNode, (userRating, interestRate) -> {
+            started.add("offer");
+            return CompletableFuture.completedFuture(userRating * interestRate);
+        });
+        Workflow.Node<String> auditNode = builder.node("audit", userNode,
+                name -> CompletableFuture.completedFuture("audited " + name));
+
+        Workflow.Execution execution = builder.build().execute();
+
+        assertThat(execution.get(offerNode)).isCancelled();
+        assertThat(started).isEmpty();
+        assertThat(rate).isCancelled();
+        assertThat(execution.get(auditNode).join()).isEqualTo("audited John");
+        assertThatThrownBy(() -> execution.toCompletableFuture().join())
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("rating down");
+    }
+}
@@ -0,0 +1,46 @@
+package com.learning.benchmark;
+
+import com.learning.util.Balances;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares summing balances as doubles through a stream, like the allOf example of CompletableFutureTest does, with
+ * {@link Balances#sum(long[])} over minor units.
+ * <p>
+ * Run it with {@code java -cp target/classes:target/test-classes com.learning.benchmark.BalancesBenchmark [accounts]}.
+ */
+public class BalancesBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        long[] minorUnits = ThreadLocalRandom.current().longs(accounts, 0, 100_000_000).toArray();
+        double[] doubles = Arrays.stream(minorUnits).mapToDouble(units -> units / 100.0).toArray();
+
+        run("DoubleStream.sum()", accounts, () -> (long) Arrays.stream(doubles).sum());
+        run("double[] loop", accounts, () -> {
+            double sum = 0;
+            for (double value : doubles) {
+                sum += value;
+            }
+            return (long) sum;
+        });
+        run("Balances.sum(long[])", accounts, () -> Balances.sum(minorUnits));
+        run("Balances.max(long[])", accounts, () -> Balances.max(minorUnits));
+    }
+
+    private static void run(String name, int accounts, LongSupplier aggregation) {
+        double best = 0;
+        long blackhole = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            blackhole += aggregation.getAsLong();
+            best = Math.max(best, accounts / ((System.nanoTime() - start) / 1e9));
+        }
+
+        System.out.printf("%-24s %,15.0f accounts/s (%d)%n", name, best, blackhole & 1);
+    }
+}
@@ -0,0 +1,114 @@
+package com.learning.benchmark;
+
+import com.learning.async.HierarchicalTimingWheel;
+import com.learning.async.Timeout;
+import com.learning.async.Timer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares {@link ScheduledThreadPoolExecutor} with the {@link HierarchicalTimingWheel} the way request timeouts use
+ * them: every timer is scheduled a few seconds out, 99% of them are cancelled before they fire, the rest fire.
+ * Reported are the schedule and cancel costs per timer, from one thread with the given number pending, and how late
+ * the last timer fired.
+ * <p>
+ * Run it with {@code java -Xmx6g -cp target/classes:target/test-classes com.learning.benchmark.TimerBenchmark
+ * [pending timers...]}, 10M pending timers need a few GB of heap.
+ */
+public class TimerBenchmark {
+
+    private static final long MIN_DELAY_MILLIS = 2_000;
+    private static final long MAX_DELAY_MILLIS = 4_000;
+    private static final int KEPT_EVERY = 100;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] {10_000, 1_000_000, 10_000_000};
+
+        for (int size : sizes) {
+            run("ScheduledThreadPoolExecutor", size, TimerBenchmark::scheduledExecutor);
+            run("HierarchicalTimingWheel", size, () -> new HierarchicalTimingWheel("benchmark-timer"));
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, int size, Supplier<Timer> timers) throws Exception {
+        Timer timer = timers.get();
+        long[] delays = ThreadLocalRandom.current().longs(size, MIN_DELAY_MILLIS, MAX_DELAY_MILLIS).toArray();
+        Timeout[] timeouts = new Timeout[size];
+        CountDownLatch fired = new CountDownLatch((size + KEPT_EVERY - 1) / KEPT_EVERY);
+        Runnable task = fired::countDown;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < size; ++i) {
+            timeouts[i] = timer.newTimeout(task, delays[i], TimeUnit.MILLISECONDS);
+        }
+        long scheduled = System.nanoTime();
+        for (int i = 0; i < size; ++i) {
+            if (i % KEPT_EVERY != 0) {
+                timeouts[i].cancel();
+            }
+        }
+        long cancelled = System.nanoTime();
+        fired.await();
+        long lateness = System.nanoTime() - scheduled - TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+
+        System.out.printf("%-28s %,11d timers: schedule %,6.0f ns, cancel %,6.0f ns, last fired %,5d ms late%n",
+                name, size, (scheduled - start) / (double) size, (cancelled - scheduled) / (double) size,
+                TimeUnit.NANOSECONDS.toMillis(Math.max(lateness, 0)));
+        ((AutoCloseable) timer).close();
+    }
+
+    /**
+     * The executor behind the same interface, with the remove on cancel policy, otherwise cancelled timers stay in
+     * its heap until their deadline.
+     */
+    private static Timer scheduledExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+
+        return new ExecutorTimer(executor);
+    }
+
+    private static final class ExecutorTimer implements Timer, AutoCloseable {
+
+        private final ScheduledThreadPoolExecutor executor;
+
+        private ExecutorTimer(ScheduledThreadPoolExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+            ScheduledFuture<?> future = executor.schedule(task, delay, unit);
+
+            return new Timeout() {
+                @Override
+                public boolean cancel() {
+                    return future.cancel(false);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return future.isCancelled();
+                }
+
+                @Override
+                public boolean isExpired() {
+                    return future.isDone() && !future.isCancelled();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+}
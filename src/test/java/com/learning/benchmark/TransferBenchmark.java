@@ -0,0 +1,89 @@
+package com.learning.benchmark;
+
+import com.learning.model.Money;
+import com.learning.model.User;
+import com.learning.service.TransferEngine;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Transfer throughput of {@link TransferEngine} with 1, 4 and 16 threads, picking accounts either uniformly or from
+ * a Zipfian distribution (a few hot accounts get most of the traffic).
+ * <p>
+ * Run it with {@code java -cp target/classes:target/test-classes com.learning.benchmark.TransferBenchmark}.
+ */
+public class TransferBenchmark {
+
+    private static final int ACCOUNTS = 100_000;
+    private static final double ZIPF_EXPONENT = 0.99;
+    private static final long DURATION_MILLIS = 2_000;
+    private static final int[] THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws InterruptedException {
+        double[] zipfCdf = zipfCdf(ACCOUNTS, ZIPF_EXPONENT);
+
+        for (int threads : THREADS) {
+            run("uniform", threads, () -> ThreadLocalRandom.current().nextInt(ACCOUNTS));
+            run("zipfian", threads, () -> {
+                int index = Arrays.binarySearch(zipfCdf, ThreadLocalRandom.current().nextDouble());
+                return Math.min(index < 0 ? -index - 1 : index, ACCOUNTS - 1);
+            });
+        }
+    }
+
+    private static void run(String distribution, int threads, IntSupplier accounts) throws InterruptedException {
+        User[] users = new User[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            users[i] = new User(i, 100.0, 10000.00);
+        }
+        TransferEngine engine = new TransferEngine();
+        Money amount = Money.parse("0.01");
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder transfers = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; ++t) {
+            new Thread(() -> {
+                long count = 0;
+                while (running.get()) {
+                    int from = accounts.getAsInt();
+                    int to = accounts.getAsInt();
+                    if (from != to) {
+                        engine.transfer(users[from], users[to], amount);
+                        ++count;
+                    }
+                }
+                transfers.add(count);
+                done.countDown();
+            }).start();
+        }
+        TimeUnit.MILLISECONDS.sleep(DURATION_MILLIS);
+        running.set(false);
+        done.await();
+
+        System.out.printf("%-8s %2d threads %,15.0f transfers/s%n", distribution, threads,
+                transfers.sum() * 1000.0 / DURATION_MILLIS);
+    }
+
+    /**
+     * Cumulative probabilities of the ranks 1..n, rank k having a weight of 1 / k^exponent.
+     */
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int k = 1; k <= n; ++k) {
+            total += 1 / Math.pow(k, exponent);
+            cdf[k - 1] = total;
+        }
+        for (int i = 0; i < n; ++i) {
+            cdf[i] /= total;
+        }
+
+        return cdf;
+    }
+}
@@ -0,0 +1,105 @@
+package com.learning.benchmark;
+
+import com.learning.model.User;
+import com.learning.store.LongIntIndex;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.LongToIntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Compares user lookup by id through {@link LongIntIndex} with {@code HashMap<Long, User>} and
+ * {@code ConcurrentHashMap<Long, User>}: lookups per second and the bytes every entry costs the structure itself (the
+ * users are allocated upfront and shared, so they aren't counted).
+ * <p>
+ * Run it with {@code java -Xmx3g -cp target/classes:target/test-classes com.learning.benchmark.UserIndexBenchmark
+ * [entries]}. Don't pin the initial heap size (-Xms), it skews the used memory reported after a full GC.
+ */
+public class UserIndexBenchmark {
+
+    private static final int LOOKUPS = 20_000_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Kept reachable for the whole run, otherwise the users can be collected mid-measurement.
+     */
+    private static User[] users;
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        users = new User[entries];
+        for (int i = 0; i < entries; ++i) {
+            users[i] = new User(id(i), 100.0, 10000.00);
+        }
+
+        run("LongIntIndex", entries, () -> {
+            LongIntIndex index = new LongIntIndex();
+            for (int i = 0; i < entries; ++i) {
+                index.put(id(i), i);
+            }
+            return index;
+        }, index -> index::get);
+
+        run("HashMap<Long, User>", entries, () -> {
+            Map<Long, User> map = new HashMap<>();
+            for (int i = 0; i < entries; ++i) {
+                map.put(id(i), users[i]);
+            }
+            return map;
+        }, map -> id -> map.get(id) == null ? -1 : 0);
+
+        run("ConcurrentHashMap<Long, User>", entries, () -> {
+            Map<Long, User> map = new ConcurrentHashMap<>();
+            for (int i = 0; i < entries; ++i) {
+                map.put(id(i), users[i]);
+            }
+            return map;
+        }, map -> id -> map.get(id) == null ? -1 : 0);
+    }
+
+    /**
+     * Sparse, non sequential ids so that neither structure benefits from dense keys.
+     */
+    private static long id(int i) {
+        return i * 7919L + 1_000_000_007L;
+    }
+
+    private static <T> void run(String name, int entries, Supplier<T> factory,
+                                Function<T, LongToIntFunction> lookup) {
+        long before = usedMemory();
+        T structure = factory.get();
+        double bytesPerEntry = (double) (usedMemory() - before) / entries;
+        LongToIntFunction get = lookup.apply(structure);
+        long[] keys = new long[1 << 20];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = id(ThreadLocalRandom.current().nextInt(entries));
+        }
+
+        double best = 0;
+        long blackhole = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; ++i) {
+                blackhole += get.applyAsInt(keys[i & (keys.length - 1)]);
+            }
+            best = Math.max(best, LOOKUPS / ((System.nanoTime() - start) / 1e9));
+        }
+
+        System.out.printf("%-32s %,15.0f lookups/s %8.1f bytes/entry (%d)%n", name, best, bytesPerEntry,
+                blackhole & 1);
+        structure = null;
+        get = null;
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,125 @@
+package com.learning.cache;
+
+import com.learning.async.HierarchicalTimingWheel;
+import com.learning.util.VirtualTimeSource;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RefreshingValueTest {
+
+    /**
+     * Only the first request waits for the source. The value is then refreshed in the background, readers see the new
+     * value without ever waiting for a load.
+     */
+    @Test
+    public void testGivenLoadedValue_WhenRefreshPeriodPasses_ThenValueIsRefreshedInBackground()
+            throws InterruptedException {
+        AtomicInteger version = new AtomicInteger();
+        RefreshingValue<Integer> value = new RefreshingValue<>(
+                () -> CompletableFuture.completedFuture(version.incrementAndGet()), 50, 1000, TimeUnit.MILLISECONDS);
+        try {
+            assertThat(value.get().join()).isEqualTo(1);
+            assertThat(value.get()).isDone();
+
+            TimeUnit.MILLISECONDS.sleep(200);
+
+            CompletableFuture<Integer> refreshed = value.get();
+            assertThat(refreshed).isDone();
+            assertThat(refreshed.join()).isGreaterThan(1);
+            assertThat(value.getLoadCount()).isGreaterThan(1);
+        } finally {
+            value.close();
+        }
+    }
+
+    /**
+     * While the source is down the last value is still served, until it's older than the staleness bound; then
+     * requests wait for a load and get its error.
+     */
+    @Test
+    public void testGivenFailingRefreshes_WhenValueGetsStale_ThenItIsServedUntilStalenessBound()
+            throws InterruptedException {
+        AtomicBoolean down = new AtomicBoolean();
+        RefreshingValue<Double> value = new RefreshingValue<>(() -> {
+            CompletableFuture<Double> rate = new CompletableFuture<>();
+            if (down.get()) {
+                rate.completeExceptionally(new IllegalStateException("Backend is down"));
+            } else {
+                rate.complete(13.0);
+            }
+            return rate;
+        }, 50, 300, TimeUnit.MILLISECONDS);
+        try {
+            double loaded = value.get().join();
+            down.set(true);
+            assertThat(loaded).isEqualTo(13.0);
+
+            TimeUnit.MILLISECONDS.sleep(150);
+            assertThat(value.get()).isCompletedWithValue(13.0);
+            assertThat(value.getFailureCount()).isPositive();
+            assertThat(value.getStaleReadCount()).isEqualTo(1);
+
+            TimeUnit.MILLISECONDS.sleep(250);
+            assertThatThrownBy(() -> value.get().join()).hasCauseInstanceOf(IllegalStateException.class);
+
+            down.set(false);
+            assertThat(value.get().join()).isEqualTo(13.0);
+        } finally {
+            value.close();
+        }
+    }
+
+    /**
+     * On a virtual clock the refresh is due after the virtual refresh period: the timer starts it only once the clock
+     * is advanced past it. The age of the value is measured on the same clock, once it's past the staleness bound
+     * readers wait for the refresh.
+     */
+    @Test
+    public void testGivenVirtualTimeSource_WhenClockPassesRefreshPeriod_ThenTimerRefreshesTheValue()
+            throws InterruptedException {
+        BlockingQueue<CompletableFuture<Integer>> loads = new LinkedBlockingQueue<>();
+        try (VirtualTimeSource time = new VirtualTimeSource();
+             HierarchicalTimingWheel timer = new HierarchicalTimingWheel("test-wheel", 1, TimeUnit.SECONDS, time)) {
+            RefreshingValue<Integer> value = new RefreshingValue<>(() -> {
+                CompletableFuture<Integer> load = new CompletableFuture<>();
+                loads.add(load);
+                return load;
+            }, 10, 30, TimeUnit.MINUTES, timer, time);
+            CompletableFuture<Integer> first = value.get();
+            loads.take().complete(1);
+            assertThat(first.join()).isEqualTo(1);
+
+            time.advance(5, TimeUnit.MINUTES);
+            assertThat(loads.poll(100, TimeUnit.MILLISECONDS)).isNull();
+            assertThat(value.get()).isCompletedWithValue(1);
+            assertThat(value.getStaleReadCount()).isZero();
+
+            // the worker of the wheel isn't held by the clock, so it may sleep past a single advance
+            CompletableFuture<Integer> refresh = null;
+            for (int minute = 0; refresh == null && minute < 20; minute++) {
+                time.advance(1, TimeUnit.MINUTES);
+                refresh = loads.poll(100, TimeUnit.MILLISECONDS);
+            }
+            assertThat(refresh).isNotNull();
+            assertThat(time.nanoTime()).isGreaterThanOrEqualTo(TimeUnit.MINUTES.toNanos(10));
+            assertThat(value.get()).isCompletedWithValue(1);
+            assertThat(value.getStaleReadCount()).isEqualTo(1);
+
+            time.advance(30, TimeUnit.MINUTES);
+            CompletableFuture<Integer> waiting = value.get();
+            assertThat(waiting).isNotDone();
+            refresh.complete(2);
+            assertThat(waiting.join()).isEqualTo(2);
+            assertThat(value.getLoadCount()).isEqualTo(2);
+            value.close();
+        }
+    }
+}
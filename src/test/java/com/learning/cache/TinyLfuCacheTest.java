@@ -0,0 +1,227 @@
+package com.learning.cache;
+
+import com.learning.model.User;
+import com.learning.service.UserService;
+import com.learning.util.VirtualTimeRule;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TinyLfuCacheTest {
+
+    @Rule
+    public VirtualTimeRule virtualTime = new VirtualTimeRule();
+
+    /**
+     * Concurrent misses of one key share a single load, and once it's loaded the key is a hit.
+     */
+    @Test
+    public void testGivenLoadInProgress_WhenSameKeyIsRequested_ThenLoadIsShared() {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> backend = new CompletableFuture<>();
+        TinyLfuCache<Long, String> cache = TinyLfuCache.<Long, String>newBuilder()
+                .maximumSize(100)
+                .build(key -> {
+                    loads.incrementAndGet();
+                    return backend;
+                });
+
+        CompletableFuture<String> first = cache.get(1L);
+        CompletableFuture<String> second = cache.get(1L);
+        backend.complete("user 1");
+
+        assertThat(first.join()).isEqualTo("user 1");
+        assertThat(second.join()).isEqualTo("user 1");
+        assertThat(cache.get(1L).join()).isEqualTo("user 1");
+        assertThat(loads).hasValue(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getLoadSuccessCount()).isEqualTo(1);
+        assertThat(cache.getLoadLatency().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGivenLoadFails_WhenKeyIsRequestedAgain_ThenItIsLoadedAgain() {
+        AtomicInteger loads = new AtomicInteger();
+        TinyLfuCache<Long, String> cache = TinyLfuCache.<Long, String>newBuilder()
+                .maximumSize(100)
+                .build(key -> {
+                    CompletableFuture<String> future = new CompletableFuture<>();
+                    if (loads.incrementAndGet() == 1) {
+                        future.completeExceptionally(new IllegalStateException("Backend is down"));
+                    } else {
+                        future.complete("user " + key);
+                    }
+                    return future;
+                });
+
+        assertThatThrownBy(() -> cache.get(1L).join()).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(cache.get(1L).join()).isEqualTo("user 1");
+        assertThat(cache.getLoadFailureCount()).isEqualTo(1);
+    }
+
+    /**
+     * Keys still in use survive a scan of many one-off keys: the scanned keys can't win admission against them, while
+     * a plain LRU cache of the same size would be flushed by the scan.
+     */
+    @Test
+    public void testGivenFrequentlyUsedKeys_WhenOneOffKeysAreScanned_ThenFrequentKeysStayCached() {
+        TinyLfuCache<Long, Long> cache = TinyLfuCache.<Long, Long>newBuilder()
+                .maximumSize(100)
+                .build(CompletableFuture::completedFuture);
+
+        for (int round = 0; round < 10; ++round) {
+            for (long key = 0; key < 50; ++key) {
+                cache.get(key);
+            }
+            cache.cleanUp();
+        }
+        for (long key = 1000; key < 11000; ++key) {
+            cache.get(key);
+            if (key % 1000 == 0) {
+                for (long hot = 0; hot < 50; ++hot) {
+                    cache.get(hot);
+                }
+            }
+        }
+        cache.cleanUp();
+
+        int cached = 0;
+        for (long key = 0; key < 50; ++key) {
+            if (cache.getIfPresent(key) != null) {
+                ++cached;
+            }
+        }
+        assertThat(cached).isEqualTo(50);
+        assertThat(cache.estimatedSize()).isLessThanOrEqualTo(100);
+        assertThat(cache.getEvictionCount()).isEqualTo(10000 + 50 - 100);
+    }
+
+    @Test
+    public void testGivenWeigher_WhenHeavyValuesAreLoaded_ThenTotalWeightStaysWithinMaximum() {
+        TinyLfuCache<Integer, String> cache = TinyLfuCache.<Integer, String>newBuilder()
+                .maximumWeight(1000, (key, value) -> value.length())
+                .build(key -> CompletableFuture.completedFuture(new String(new char[key])));
+
+        for (int key = 1; key <= 100; ++key) {
+            cache.get(key);
+        }
+        cache.cleanUp();
+
+        assertThat(cache.weightedSize()).isBetween(1L, 1000L);
+        assertThat(cache.getEvictionWeight()).isEqualTo(100 * 101 / 2 - cache.weightedSize());
+    }
+
+    @Test
+    public void testGivenExpiration_WhenTimePasses_ThenEntriesExpire() {
+        AtomicLong now = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+        TinyLfuCache<Long, Integer> cache = TinyLfuCache.<Long, Integer>newBuilder()
+                .maximumSize(100)
+                .expireAfterWrite(10, TimeUnit.SECONDS)
+                .expireAfterAccess(3, TimeUnit.SECONDS)
+                .ticker(now::get)
+                .build(key -> CompletableFuture.completedFuture(loads.incrementAndGet()));
+
+        assertThat(cache.get(1L).join()).isEqualTo(1);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertThat(cache.get(1L).join()).isEqualTo(1);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        assertThat(cache.getIfPresent(1L)).isNull();
+        assertThat(cache.get(1L).join()).isEqualTo(2);
+
+        for (int i = 0; i < 5; ++i) {
+            now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            cache.get(1L);
+        }
+        assertThat(cache.get(1L).join()).isEqualTo(3);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        cache.cleanUp();
+        assertThat(cache.estimatedSize()).isZero();
+        assertThat(cache.getEvictionCount()).isEqualTo(3);
+    }
+
+    /**
+     * A load slower than the expiration is shared by every caller while it runs, and its value expires only the
+     * expiration after the load completed, not after it started.
+     */
+    @Test
+    public void testGivenLoadSlowerThanExpiration_WhenKeyIsRequestedDuringLoad_ThenLoadIsSharedAndExpiresAfterIt() {
+        AtomicLong now = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Integer> backend = new CompletableFuture<>();
+        TinyLfuCache<Long, Integer> cache = TinyLfuCache.<Long, Integer>newBuilder()
+                .maximumSize(100)
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .ticker(now::get)
+                .build(key -> {
+                    loads.incrementAndGet();
+                    return backend;
+                });
+
+        CompletableFuture<Integer> first = cache.get(1L);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        CompletableFuture<Integer> second = cache.get(1L);
+        backend.complete(7);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertThat(first.join()).isEqualTo(7);
+        assertThat(second.join()).isEqualTo(7);
+        assertThat(cache.getIfPresent(1L).join()).isEqualTo(7);
+        assertThat(loads).hasValue(1);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(cache.getIfPresent(1L)).isNull();
+    }
+
+    /**
+     * Every caller gets its own future: one caller cancelling its future while the value loads doesn't fail the cached
+     * entry, the next request gets the loaded value.
+     */
+    @Test
+    public void testGivenLoadInProgress_WhenOneCallerCancels_ThenEntryIsStillLoadedForOthers() {
+        CompletableFuture<Long> backend = new CompletableFuture<>();
+        TinyLfuCache<Long, Long> cache = TinyLfuCache.<Long, Long>newBuilder()
+                .maximumSize(100)
+                .build(key -> backend);
+
+        cache.get(1L).cancel(true);
+        backend.complete(42L);
+
+        assertThat(cache.get(1L).join()).isEqualTo(42L);
+        assertThat(cache.estimatedSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGivenNoBound_WhenBuild_ThenIllegalStateExceptionIsThrown() {
+        assertThatThrownBy(() -> TinyLfuCache.<Long, Long>newBuilder().build(key -> null))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * With caching enabled only the first request of a user pays for the backend call, the second one is served from
+     * the cache right away.
+     */
+    @Test
+    public void testGivenCachingEnabled_WhenUserIsRequestedTwice_ThenSecondRequestIsHit() {
+        TinyLfuCache<Long, User> cache = UserService.enableCaching(1000, 1, TimeUnit.MINUTES);
+        try {
+            User first = virtualTime.join(UserService.getUserDetails(42));
+            CompletableFuture<User> second = UserService.getUserDetails(42);
+
+            assertThat(second).isDone();
+            assertThat(second.join()).isSameAs(first);
+            assertThat(cache.getHitRate()).isEqualTo(0.5);
+        } finally {
+            UserService.disableCaching();
+        }
+    }
+}
@@ -1,18 +1,22 @@
 package com.learning.concurrency;
 
+import com.learning.async.Futures;
 import com.learning.model.User;
 import com.learning.service.CreditService;
 import com.learning.service.UserService;
 import com.learning.util.ThreadUtils;
+import com.learning.util.VirtualTimeRule;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
+import org.junit.Rule;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -20,6 +24,9 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class CompletableFutureTest {
 
+    @Rule
+    public VirtualTimeRule virtualTime = new VirtualTimeRule();
+
     /**
      * The get() method blocks continuous code execution until the Future is complete. So, the following call will block
      * forever because the* Future is never completed and the TimeoutException will be thrown. The code execution will
@@ -29,7 +36,7 @@ public class CompletableFutureTest {
     public void testGivenCompletableFutureWithoutTask_WhenTryGetFutureResult_ThenThrowTimeoutException() {
         CompletableFuture<String> completableFuture = new CompletableFuture<>();
 
-        assertThatThrownBy(() -> completableFuture.get(5, TimeUnit.SECONDS))
+        assertThatThrownBy(() -> completableFuture.get(100, TimeUnit.MILLISECONDS))
                 .isInstanceOf(TimeoutException.class);
     }
 
@@ -54,8 +61,7 @@ public class CompletableFutureTest {
      * return anything from the task. By default tasks are executing into ForkJoinPool.commonPool().
      */
     @Test
-    public void testGivenCompletableFuture_WhenCallRunAsyncMethod_ThenTaskCompletedButNothingReturn()
-            throws ExecutionException, InterruptedException {
+    public void testGivenCompletableFuture_WhenCallRunAsyncMethod_ThenTaskCompletedButNothingReturn() {
         CompletableFuture<Void> completableFuture = CompletableFuture.runAsync(() -> {
             ThreadUtils.simulateLongRunningJob(2);
 
@@ -63,7 +69,7 @@ public class CompletableFutureTest {
         });
 
         // Block and wait for the future to complete
-        completableFuture.get();
+        virtualTime.join(completableFuture);
     }
 
     /**
@@ -71,8 +77,7 @@ public class CompletableFutureTest {
      * return some result from the task. By default tasks are executing into ForkJoinPool.commonPool().
      */
     @Test
-    public void testGivenCompletableFuture_WhenCallSupplyAsyncMethod_ThenTaskCompletedAndReturnExpectedResult()
-            throws ExecutionException, InterruptedException {
+    public void testGivenCompletableFuture_WhenCallSupplyAsyncMethod_ThenTaskCompletedAndReturnExpectedResult() {
         String expectedResult = "The task execution result";
 
         CompletableFuture<String> completableFuture = CompletableFuture.supplyAsync(() -> {
@@ -82,7 +87,7 @@ public class CompletableFutureTest {
         });
 
         // Block and wait for the future to complete
-        final String actualResult = completableFuture.get();
+        final String actualResult = virtualTime.join(completableFuture);
 
         assertThat(actualResult).isEqualTo(expectedResult);
     }
@@ -91,8 +96,7 @@ public class CompletableFutureTest {
      * Run task into custom thread pool.
      */
     @Test
-    public void testGivenCompletableFuture_WhenCallSupplyAsyncMethodIntoCustomThreadPool_ThenTaskCompletedAndReturnExpectedResult()
-            throws ExecutionException, InterruptedException {
+    public void testGivenCompletableFuture_WhenCallSupplyAsyncMethodIntoCustomThreadPool_ThenTaskCompletedAndReturnExpectedResult() {
         String expectedResult = "The task execution result";
         final ExecutorService executorService = Executors.newFixedThreadPool(5);
 
@@ -103,7 +107,7 @@ public class CompletableFutureTest {
         }, executorService);
 
         // Block and wait for the future to complete
-        final String actualResult = completableFuture.get();
+        final String actualResult = virtualTime.join(completableFuture);
 
         assertThat(actualResult).isEqualTo(expectedResult);
     }
@@ -115,8 +119,7 @@ public class CompletableFutureTest {
      * execution chain and the result will be similar.
      */
     @Test
-    public void testGivenCompletableFuture_WhenTaskComplete_ThenTransformTheResult()
-            throws ExecutionException, InterruptedException {
+    public void testGivenCompletableFuture_WhenTaskComplete_ThenTransformTheResult() {
         int customAge = 18;
         String expectedResult = String.format("How old are you? - I'm %d years old.", customAge);
 
@@ -139,7 +142,7 @@ public class CompletableFutureTest {
                 });
 
         // Block and wait for the future to complete
-        final String actualResult = completableFuture.get();
+        final String actualResult = virtualTime.join(completableFuture);
 
         assertThat(actualResult).isEqualTo(expectedResult);
     }
@@ -149,8 +152,7 @@ public class CompletableFutureTest {
      * when it arrives but don't return anything.
      */
     @Test
-    public void testGivenCompletableFuture_WhenTaskComplete_ThenUseTheResultAndDoNotReturnAnyResult()
-            throws ExecutionException, InterruptedException {
+    public void testGivenCompletableFuture_WhenTaskComplete_ThenUseTheResultAndDoNotReturnAnyResult() {
         CompletableFuture<Void> completableFuture = CompletableFuture.supplyAsync(() -> {
             ThreadUtils.simulateLongRunningJob(2);
 
@@ -159,7 +161,7 @@ public class CompletableFutureTest {
                 .thenAccept(age -> System.out.println(String.format("I'm %d years old.", age)));
 
         // Block and wait for the future to complete
-        completableFuture.get();
+        virtualTime.join(completableFuture);
     }
 
     /**
@@ -167,8 +169,7 @@ public class CompletableFutureTest {
      * CompletableFuture complete and don't return anything.
      */
     @Test
-    public void testGivenCompletableFuture_WhenTaskComplete_ThenAnotherSeparateTask()
-            throws ExecutionException, InterruptedException {
+    public void testGivenCompletableFuture_WhenTaskComplete_ThenAnotherSeparateTask() {
         CompletableFuture<Void> completableFuture = CompletableFuture.supplyAsync(() -> {
             ThreadUtils.simulateLongRunningJob(2);
 
@@ -177,7 +178,7 @@ public class CompletableFutureTest {
                 .thenRun(() -> System.out.println("Another task was started"));
 
         // Block and wait for the future to complete
-        completableFuture.get();
+        virtualTime.join(completableFuture);
     }
 
     /**
@@ -186,13 +187,12 @@ public class CompletableFutureTest {
      * consequently.
      */
     @Test
-    public void testGivenTwoServiceThatReturnCompletableFuture_WhenOneServiceHasToUseResultFromAnother_ThenTheyHaveToBeComposed()
-            throws ExecutionException, InterruptedException {
+    public void testGivenTwoServiceThatReturnCompletableFuture_WhenOneServiceHasToUseResultFromAnother_ThenTheyHaveToBeComposed() {
         CompletableFuture<Double> completableFuture =
                 UserService.getUserDetails(1L)
                         .thenCompose(CreditService::getUserCreditRating);
 
-        assertThat(completableFuture.get()).isEqualTo(100.0);
+        assertThat(virtualTime.join(completableFuture)).isEqualTo(100.0);
     }
 
     /**
@@ -200,13 +200,12 @@ public class CompletableFutureTest {
      * to run two Futures independently (at the same time) and do something after both are complete.
      */
     @Test
-    public void testGivenTwoServiceThatReturnCompletableFuture_WhenNeedToCalculateMutualResult_ThenTheyHaveToBeCombined()
-            throws ExecutionException, InterruptedException {
+    public void testGivenTwoServiceThatReturnCompletableFuture_WhenNeedToCalculateMutualResult_ThenTheyHaveToBeCombined() {
         CompletableFuture<Double> completableFuture =
                 UserService.getUserDetails(1L)
                         .thenCombine(CreditService.getInterestRate(), (user, rate) -> user.getMoney() * rate);
 
-        assertThat(completableFuture.get()).isEqualTo(10000.00 * 13.0);
+        assertThat(virtualTime.join(completableFuture)).isEqualTo(10000.00 * 13.0);
     }
 
     /**
@@ -215,8 +214,7 @@ public class CompletableFutureTest {
      * CompletableFuture.allOf() is that it returns CompletableFuture<Void>, but it's not a problem - see following code.
      */
     @Test
-    public void testGivenListOfCompletableFutures_WhenCallAllOfMethod_ThenContinueAfterAllFeaturesComplete()
-            throws ExecutionException, InterruptedException {
+    public void testGivenListOfCompletableFutures_WhenCallAllOfMethod_ThenContinueAfterAllFeaturesComplete() {
         List<CompletableFuture<User>> userFutures = LongStream.range(1, 6)
                 .mapToObj(UserService::getUserDetails)
                 .collect(Collectors.toList());
@@ -230,7 +228,42 @@ public class CompletableFutureTest {
                 .sum()
         );
 
-        assertThat(moneySum.get()).isEqualTo(5 * 10000.00);
+        assertThat(virtualTime.join(moneySum)).isEqualTo(5 * 10000.00);
+    }
+
+    /**
+     * Futures.allAsList() - like allOf(), but the result is the list of the users, nothing has to be joined again.
+     */
+    @Test
+    public void testGivenListOfCompletableFutures_WhenCallAllAsList_ThenResultHoldsAllValues() {
+        List<CompletableFuture<User>> userFutures = LongStream.range(1, 6)
+                .mapToObj(UserService::getUserDetails)
+                .collect(Collectors.toList());
+
+        final CompletableFuture<Double> moneySum = Futures.allAsList(userFutures)
+                .thenApply(users -> users.stream()
+                        .mapToDouble(User::getMoney)
+                        .sum()
+                );
+
+        assertThat(virtualTime.join(moneySum)).isEqualTo(5 * 10000.00);
+    }
+
+    /**
+     * The same five users as above fetched through the batch API: one task and one backend round-trip for all of them
+     * instead of one per user, and the result already holds the users, nothing has to be joined again.
+     */
+    @Test
+    public void testGivenListOfUserIds_WhenFetchThemInOneBatch_ThenOneRoundTripReturnsAllUsers() {
+        long[] userIds = LongStream.range(1, 6).toArray();
+
+        final CompletableFuture<Double> moneySum = UserService.getUserDetails(userIds)
+                .thenApply(users -> users.values().stream()
+                        .mapToDouble(User::getMoney)
+                        .sum()
+                );
+
+        assertThat(virtualTime.join(moneySum)).isEqualTo(5 * 10000.00);
     }
 
     /**
@@ -238,13 +271,15 @@ public class CompletableFutureTest {
      * given CompletableFutures complete, with the same result.
      */
     @Test
-    public void testGivenListOfCompletableFutures_WhenCallAnyOfMethod_ThenContinueAfterOneOfFeaturesComplete()
-            throws ExecutionException, InterruptedException {
+    public void testGivenListOfCompletableFutures_WhenCallAnyOfMethod_ThenContinueAfterOneOfFeaturesComplete() {
+        // tasks tracked by the virtual clock, so the 1 second job surely wakes first
+        Executor executor = virtualTime.getExecutor();
+
         CompletableFuture<String> future1 = CompletableFuture.supplyAsync(() -> {
             ThreadUtils.simulateLongRunningJob(3);
 
             return "Result 1";
-        });
+        }, executor);
 
         final String expectedResult = "Result 2";
 
@@ -252,17 +287,17 @@ public class CompletableFutureTest {
             ThreadUtils.simulateLongRunningJob(1);
 
             return expectedResult;
-        });
+        }, executor);
 
         CompletableFuture<String> future3 = CompletableFuture.supplyAsync(() -> {
             ThreadUtils.simulateLongRunningJob(3);
 
             return "Result 3";
-        });
+        }, executor);
 
         CompletableFuture<Object> anyOfFuture = CompletableFuture.anyOf(future1, future2, future3);
 
-        assertThat(anyOfFuture.get()).isEqualTo(expectedResult);
+        assertThat(virtualTime.join(anyOfFuture)).isEqualTo(expectedResult);
     }
 
     /**
@@ -1,15 +1,19 @@
 package com.learning.concurrency;
 
 import com.learning.util.ThreadUtils;
-import java.util.concurrent.TimeUnit;
+import com.learning.util.VirtualTimeRule;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class ReentrantLockTest {
 
+    @Rule
+    public VirtualTimeRule virtualTime = new VirtualTimeRule();
+
     private Lock reentrantLock;
     private Condition conditionObject;
     private int[] amount;
@@ -27,7 +31,7 @@ public class ReentrantLockTest {
 
         new Thread(this::testLockThread).start();
 
-        TimeUnit.SECONDS.sleep(8);
+        ThreadUtils.simulateLongRunningJob(8);
     }
 
     private void testLockThread() {
@@ -58,7 +62,7 @@ public class ReentrantLockTest {
             ThreadUtils.simulateLongRunningJob(1);
         }
 
-        TimeUnit.SECONDS.sleep(10);
+        ThreadUtils.simulateLongRunningJob(10);
     }
 
     private void testConditionObject(int number) throws InterruptedException {
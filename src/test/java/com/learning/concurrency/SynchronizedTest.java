@@ -1,15 +1,19 @@
 package com.learning.concurrency;
 
 import com.learning.util.ThreadUtils;
-import java.util.concurrent.TimeUnit;
+import com.learning.util.VirtualTimeRule;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class SynchronizedTest {
 
+    @Rule
+    public VirtualTimeRule virtualTime = new VirtualTimeRule();
+
     private int[] amount;
 
     @Before
@@ -34,7 +38,7 @@ public class SynchronizedTest {
             ThreadUtils.simulateLongRunningJob(1);
         }
 
-        TimeUnit.SECONDS.sleep(10);
+        ThreadUtils.simulateLongRunningJob(10);
     }
 
     private void testSynchronizedConditions(int number) throws InterruptedException {
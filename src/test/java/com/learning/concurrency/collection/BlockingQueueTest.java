@@ -2,10 +2,11 @@ package com.learning.concurrency.collection;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 
 /**
@@ -25,24 +26,27 @@ public class BlockingQueueTest {
     @Test
     public void testBlockingQueue() throws InterruptedException {
         // fill the queue
-        new Thread(() -> {
+        Thread producer = new Thread(() -> {
             try {
                 enumerate(new File("src/test/resources/concurrent_package_files"));
                 filesQueue.put(DUMMY);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
-        }).start();
+        });
+        producer.start();
 
         // search the keyword
         String keyword = "volatile";
+        List<Thread> searchers = new ArrayList<>();
         for (int i = 1; i <= SEARCH_THREADS; ++i) {
-            new Thread(() -> {
+            Thread searcher = new Thread(() -> {
                 try {
                     boolean isFinished = false;
                     while (!isFinished) {
                         File file = filesQueue.take();
                         if (file == DUMMY) {
+                            filesQueue.put(file); // put it back, so the other searchers finish too
                             isFinished = true;
                         } else {
                             search(file, keyword);
@@ -51,10 +55,15 @@ public class BlockingQueueTest {
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
-            }).start();
+            });
+            searchers.add(searcher);
+            searcher.start();
         }
 
-        TimeUnit.SECONDS.sleep(3);
+        producer.join();
+        for (Thread searcher : searchers) {
+            searcher.join();
+        }
     }
 
     /**
@@ -1,8 +1,9 @@
 package com.learning.concurrency.collection;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.TimeUnit;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
@@ -23,11 +24,16 @@ public class ConcurrentHashMapTest {
         String selectedWord = "some_word";
         wordsMap.put(selectedWord, 0L);
 
+        List<Thread> threads = new ArrayList<>();
         for (int i = 0; i < 10; ++i) {
-            new Thread(() -> replaceValueSafely(wordsMap, selectedWord)).start();
+            Thread thread = new Thread(() -> replaceValueSafely(wordsMap, selectedWord));
+            threads.add(thread);
+            thread.start();
         }
 
-        TimeUnit.SECONDS.sleep(2);
+        for (Thread thread : threads) {
+            thread.join();
+        }
 
         Assertions.assertThat(wordsMap.get(selectedWord)).isEqualTo(10L);
     }
@@ -0,0 +1,83 @@
+package com.learning.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AtomicUserTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 10_000;
+
+    /**
+     * Concurrent read-modify-write through getMoney()/setMoney() of a plain User loses updates. Here every cent is
+     * accounted for and no debit overdraws the account.
+     */
+    @Test
+    public void testGivenAccount_WhenManyThreadsCreditAndDebit_ThenNoUpdateIsLostAndBalanceNeverGoesNegative()
+            throws InterruptedException {
+        AtomicUser user = new AtomicUser(1L, 100.0, 0.0);
+        AtomicInteger debits = new AtomicInteger();
+        AtomicBoolean overdrawn = new AtomicBoolean();
+
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; ++i) {
+                user.addMoney(0.03);
+                if (user.tryDebit(0.05)) {
+                    debits.incrementAndGet();
+                }
+                if (user.getMoney() < 0) {
+                    overdrawn.set(true);
+                }
+            }
+        });
+
+        assertThat(overdrawn).isFalse();
+        long credited = THREADS * OPERATIONS_PER_THREAD * 3L;
+        assertThat(user.getBalance().getMinorUnits()).isEqualTo(credited - debits.get() * 5L);
+    }
+
+    @Test
+    public void testGivenStripedFeeAccount_WhenManyThreadsCredit_ThenEveryCreditIsCounted()
+            throws InterruptedException {
+        AtomicUser feeAccount = AtomicUser.striped(1L, 100.0, 10.00);
+
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; ++i) {
+                feeAccount.addMoney(0.01);
+            }
+        });
+
+        assertThat(feeAccount.isStriped()).isTrue();
+        assertThat(feeAccount.getBalance()).isEqualTo(Money.parse("810.00"));
+        assertThat(feeAccount.tryDebit(810.01)).isFalse();
+        assertThat(feeAccount.tryDebit(800.00)).isTrue();
+        assertThat(feeAccount.compareAndSetMoney(10.00, 5.00)).isTrue();
+        assertThat(feeAccount.getMoney()).isEqualTo(5.00);
+    }
+
+    @Test
+    public void testGivenAccount_WhenCompareAndSetWithStaleExpectation_ThenBalanceIsNotChanged() {
+        AtomicUser user = new AtomicUser(1L, 100.0, 10000.00);
+
+        assertThat(user.compareAndSetMoney(9999.99, 0.0)).isFalse();
+        assertThat(user.compareAndSetMoney(10000.00, 0.5)).isTrue();
+        assertThat(user.getMoney()).isEqualTo(0.5);
+    }
+
+    private static void runConcurrently(Runnable task) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; ++i) {
+            Thread thread = new Thread(task);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
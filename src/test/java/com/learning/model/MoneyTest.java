@@ -0,0 +1,42 @@
+package com.learning.model;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MoneyTest {
+
+    /**
+     * Adding ten cents ten times with doubles doesn't give exactly one, with minor units it does.
+     */
+    @Test
+    public void testGivenAmounts_WhenSumAsDoublesAndAsMoney_ThenOnlyMoneyIsExact() {
+        double doubleSum = 0;
+        Money moneySum = Money.ZERO;
+        for (int i = 0; i < 10; ++i) {
+            doubleSum += 0.1;
+            moneySum = moneySum.plus(Money.of(0.1));
+        }
+
+        assertThat(doubleSum).isNotEqualTo(1.0);
+        assertThat(moneySum).isEqualTo(Money.parse("1.00"));
+        assertThat(moneySum.getMinorUnits()).isEqualTo(100L);
+        assertThat(moneySum.toString()).isEqualTo("1.00");
+    }
+
+    @Test
+    public void testGivenDoubleWithTwoDecimals_WhenConvertToMinorUnits_ThenNoCentIsLost() {
+        assertThat(Money.toMinorUnits(0.29)).isEqualTo(29L);
+        assertThat(Money.toMinorUnits(-10000.01)).isEqualTo(-1000001L);
+        assertThat(Money.of(10000.00).toDouble()).isEqualTo(10000.00);
+    }
+
+    @Test
+    public void testGivenHugeAmounts_WhenOverflow_ThenArithmeticExceptionIsThrown() {
+        assertThatThrownBy(() -> Money.ofMinorUnits(Long.MAX_VALUE).plus(Money.ofMinorUnits(1)))
+                .isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.of(Double.NaN)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.of(1e300)).isInstanceOf(ArithmeticException.class);
+    }
+}
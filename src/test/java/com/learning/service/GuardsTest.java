@@ -0,0 +1,56 @@
+package com.learning.service;
+
+import com.learning.async.CircuitBreaker;
+import com.learning.async.CircuitBreakerOpenException;
+import com.learning.async.ConcurrencyLimiter;
+import com.learning.async.Futures;
+import com.learning.async.LimitAlgorithm;
+import com.learning.async.RateLimiter;
+import com.learning.async.Timeouts;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GuardsTest {
+
+    /**
+     * A failed call opens the breaker. The calls after it fail right away, without waiting for a rate permit or
+     * taking one, so they don't use up the rate of the calls made once the backend is back.
+     */
+    @Test
+    public void testGivenOpenCircuit_WhenCallsArrive_ThenTheyFailFastWithoutTakingRatePermits() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter rateLimiter = new RateLimiter(1, 1, now::get, Timeouts.getTimer());
+        CircuitBreaker circuitBreaker = CircuitBreaker.newBuilder("test").slidingWindow(1, 1).ticker(now::get).build();
+
+        Guards.call(() -> Futures.failed(new IllegalStateException("down")), rateLimiter, null, circuitBreaker);
+        CompletableFuture<Integer> rejected = Guards.call(() -> CompletableFuture.completedFuture(1), rateLimiter,
+                null, circuitBreaker);
+
+        assertThatThrownBy(rejected::join).hasCauseInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(rateLimiter.getAcquiredCount()).isEqualTo(1);
+    }
+
+    /**
+     * Cancelling a guarded call, e.g. as the loser of a hedge, cancels the backend call behind the rate limiter and
+     * frees its slot in the concurrency limiter.
+     */
+    @Test
+    public void testGivenGuardedCallInFlight_WhenItIsCancelled_ThenTheBackendCallIsCancelledAndItsSlotFreed() {
+        RateLimiter rateLimiter = new RateLimiter(1000, 10);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter("test",
+                LimitAlgorithm.aimd(1, 1, 0.5, 1, TimeUnit.SECONDS), 1, 0);
+        CircuitBreaker circuitBreaker = CircuitBreaker.newBuilder("test").build();
+        CompletableFuture<Integer> backend = new CompletableFuture<>();
+
+        Guards.call(() -> backend, rateLimiter, concurrencyLimiter, circuitBreaker).cancel(true);
+
+        assertThat(backend).isCancelled();
+        assertThat(concurrencyLimiter.getInFlight()).isZero();
+        assertThat(circuitBreaker.getFailureCount()).isZero();
+    }
+}
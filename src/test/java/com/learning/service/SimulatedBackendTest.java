@@ -0,0 +1,79 @@
+package com.learning.service;
+
+import com.learning.model.User;
+import com.learning.util.LatencyDistribution;
+import com.learning.util.LatencyInjector;
+import com.learning.util.ThreadUtils;
+import com.learning.util.VirtualTimeRule;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SimulatedBackendTest {
+
+    @Rule
+    public VirtualTimeRule virtualTime = new VirtualTimeRule();
+
+    /**
+     * Ten thousand concurrent delays take about as long as one, none of them holds a thread while waiting.
+     */
+    @Test
+    public void testGivenManyDelays_WhenTheyRunConcurrently_ThenTheyAllCompleteAfterOneDelay() {
+        long start = ThreadUtils.getTimeSource().nanoTime();
+        List<CompletableFuture<Void>> delays = IntStream.range(0, 10_000)
+                .mapToObj(i -> ThreadUtils.delay(200, TimeUnit.MILLISECONDS))
+                .collect(Collectors.toList());
+        delays.forEach(virtualTime::join);
+
+        long elapsed = ThreadUtils.getTimeSource().nanoTime() - start;
+        assertThat(elapsed).isBetween(TimeUnit.MILLISECONDS.toNanos(200), TimeUnit.SECONDS.toNanos(2));
+    }
+
+    /**
+     * In non-blocking mode 100 concurrent lookups of distinct users all finish after one simulated backend call,
+     * although the service has only 16 threads; blocking they would take 7 rounds of 3 seconds.
+     */
+    @Test
+    public void testGivenNonBlockingMode_WhenManyUsersAreFetchedConcurrently_ThenThreadsDontLimitThroughput() {
+        SimulatedBackend.setMode(SimulatedBackend.Mode.NON_BLOCKING);
+        try {
+            long start = ThreadUtils.getTimeSource().nanoTime();
+            List<CompletableFuture<User>> users = LongStream.range(1000, 1100)
+                    .mapToObj(UserService::getUserDetails)
+                    .collect(Collectors.toList());
+
+            assertThat(users.stream().mapToLong(user -> virtualTime.join(user).getId()).sum()).isEqualTo(104950);
+            assertThat(ThreadUtils.getTimeSource().nanoTime() - start).isEqualTo(TimeUnit.SECONDS.toNanos(3));
+        } finally {
+            SimulatedBackend.setMode(SimulatedBackend.Mode.BLOCKING);
+        }
+    }
+
+    /**
+     * Injected latencies replace the fixed 3 seconds, and injected failures fail the call's future.
+     */
+    @Test
+    public void testGivenLatencyInjector_WhenCallsAreMade_ThenInjectedFailuresFailThem() {
+        LatencyInjector latency = CreditService.getLatency();
+        try {
+            CreditService.setLatency(new LatencyInjector(
+                    LatencyDistribution.constant(500, TimeUnit.MICROSECONDS), 0, 1));
+            assertThat(virtualTime.join(CreditService.getUserCreditRating(new User(201, 70.0, 0)))).isEqualTo(70.0);
+
+            CreditService.setLatency(new LatencyInjector(
+                    LatencyDistribution.constant(500, TimeUnit.MICROSECONDS), 1, 1));
+            assertThatThrownBy(() -> virtualTime.join(CreditService.getUserCreditRating(new User(202, 70.0, 0))))
+                    .hasCauseInstanceOf(SimulatedBackendException.class);
+        } finally {
+            CreditService.setLatency(latency);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.learning.service;
+
+import com.learning.model.Money;
+import com.learning.model.User;
+import com.learning.store.UserStore;
+import com.learning.store.UserWal;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TransferEngineTest {
+
+    private static final int ACCOUNTS = 10;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 20_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Threads keep transferring in both directions between a handful of accounts sharing few stripes: with
+     * "lock from, then to" this would deadlock sooner or later, with ordered stripes it finishes and no money is
+     * created or lost.
+     */
+    @Test
+    public void testGivenConcurrentOpposingTransfers_WhenAllComplete_ThenNoDeadlockAndTotalIsPreserved()
+            throws InterruptedException {
+        TransferEngine engine = new TransferEngine(4);
+        User[] users = new User[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            users[i] = new User(i, 100.0, 1000.00);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; ++t) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; ++i) {
+                    int from = random.nextInt(ACCOUNTS);
+                    int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    engine.transfer(users[from], users[to], Money.ofMinorUnits(1 + random.nextInt(5000)));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+            assertThat(thread.isAlive()).isFalse();
+        }
+
+        long total = 0;
+        for (User user : users) {
+            assertThat(user.getMoney()).isGreaterThanOrEqualTo(0.0);
+            total += Money.toMinorUnits(user.getMoney());
+        }
+        assertThat(total).isEqualTo(ACCOUNTS * 100_000L);
+    }
+
+    @Test
+    public void testGivenInsufficientFunds_WhenTransfer_ThenNothingIsMoved() {
+        TransferEngine engine = new TransferEngine();
+        User from = new User(1L, 100.0, 10.00);
+        User to = new User(2L, 100.0, 0.0);
+
+        assertThat(engine.transfer(from, to, Money.parse("10.01"))).isFalse();
+        assertThat(engine.transfer(from, to, Money.parse("10.00"))).isTrue();
+
+        assertThat(from.getMoney()).isEqualTo(0.0);
+        assertThat(to.getMoney()).isEqualTo(10.00);
+        assertThatThrownBy(() -> engine.transfer(from, from, Money.parse("1"))).isInstanceOf(
+                IllegalArgumentException.class);
+        assertThatThrownBy(() -> engine.transfer(from, to, Money.ZERO)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * A credit that fails undoes the debit: the payer gets its money back and the error reaches the caller.
+     */
+    @Test
+    public void testGivenFailingCredit_WhenTransfer_ThenDebitIsRolledBack() {
+        TransferEngine engine = new TransferEngine();
+        User from = new User(1L, 100.0, 10.00);
+        User to = new User(2L, 100.0, 0.0) {
+            @Override
+            public void setMoney(double money) {
+                throw new IllegalStateException("account locked");
+            }
+        };
+
+        assertThatThrownBy(() -> engine.transfer(from, to, Money.parse("4.00")))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(from.getMoney()).isEqualTo(10.00);
+    }
+
+    /**
+     * A transfer between users of a logged store is one log entry: recovery replays both balances from it. Once the
+     * log fails commits, a transfer changes neither balance.
+     */
+    @Test
+    public void testGivenLoggedStore_WhenTransfer_ThenBothBalancesAreOneEntry() throws IOException {
+        TransferEngine engine = new TransferEngine();
+        Path directory = folder.getRoot().toPath();
+        UserWal wal = UserWal.open(directory);
+        UserStore store = new UserStore(false, wal);
+        store.add(1L, 100.0, 10.00);
+        store.add(2L, 100.0, 0.0);
+
+        assertThat(engine.transfer(store.get(1L), store.get(2L), Money.parse("4.00"))).isTrue();
+        wal.close();
+        assertThatThrownBy(() -> engine.transfer(store.get(1L), store.get(2L), Money.parse("1.00")))
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        assertThat(store.get(1L).getMoney()).isEqualTo(6.00);
+        assertThat(store.get(2L).getMoney()).isEqualTo(4.00);
+        try (UserWal reopened = UserWal.open(directory)) {
+            List<String> transfers = new ArrayList<>();
+            reopened.replay(0, new UserWal.Handler() {
+                @Override
+                public void onCreate(long id, double creditRating, double money) {
+                }
+
+                @Override
+                public void onMoney(long id, double money) {
+                    transfers.add("money of " + id);
+                }
+
+                @Override
+                public void onCreditRating(long id, double creditRating) {
+                }
+
+                @Override
+                public void onTransfer(long fromId, double fromMoney, long toId, double toMoney) {
+                    transfers.add(fromId + " " + fromMoney + " -> " + toId + " " + toMoney);
+                }
+            });
+            UserStore recovered = new UserStore(false, reopened);
+            recovered.recover(0);
+
+            assertThat(transfers).containsExactly("1 6.0 -> 2 4.0");
+            assertThat(recovered.get(1L).getMoney()).isEqualTo(6.00);
+            assertThat(recovered.get(2L).getMoney()).isEqualTo(4.00);
+        }
+    }
+}
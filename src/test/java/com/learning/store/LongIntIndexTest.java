@@ -0,0 +1,82 @@
+package com.learning.store;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongIntIndexTest {
+
+    /**
+     * Removed keys leave tombstones, lookups of the keys that were probed past them must still succeed and the
+     * tombstones are reused or dropped on rehash.
+     */
+    @Test
+    public void testGivenIndex_WhenPutRemoveAndGrow_ThenEveryLiveKeyIsFound() {
+        LongIntIndex index = new LongIntIndex();
+        int count = 100_000;
+
+        for (int i = 0; i < count; ++i) {
+            assertThat(index.put(i * 31L, i)).isEqualTo(LongIntIndex.NO_VALUE);
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertThat(index.remove(i * 31L)).isEqualTo(i);
+        }
+        for (int i = 0; i < count; i += 4) {
+            index.put(i * 31L, i + 1);
+        }
+
+        assertThat(index.size()).isEqualTo(count / 2 + count / 4);
+        for (int i = 0; i < count; ++i) {
+            int expected = i % 4 == 0 ? i + 1 : i % 2 == 0 ? LongIntIndex.NO_VALUE : i;
+            assertThat(index.get(i * 31L)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testGivenIndex_WhenPutExistingKey_ThenValueIsReplaced() {
+        LongIntIndex index = new LongIntIndex();
+
+        index.put(Long.MIN_VALUE, 1);
+
+        assertThat(index.put(Long.MIN_VALUE, 2)).isEqualTo(1);
+        assertThat(index.get(Long.MIN_VALUE)).isEqualTo(2);
+        assertThat(index.containsKey(0L)).isFalse();
+    }
+
+    /**
+     * Readers run without locks while a single writer keeps inserting and rehashing, yet none of them ever misses a
+     * key that had been inserted before the read started.
+     */
+    @Test
+    public void testGivenSingleWriter_WhenReadConcurrently_ThenReadersNeverMissPublishedKeys()
+            throws InterruptedException {
+        LongIntIndex index = new LongIntIndex();
+        AtomicInteger published = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(4);
+        int count = 200_000;
+
+        for (int r = 0; r < 4; ++r) {
+            new Thread(() -> {
+                while (published.get() < count) {
+                    int key = published.get() - 1;
+                    if (key >= 0 && index.get(key) != key) {
+                        failed.set(true);
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        for (int i = 0; i < count; ++i) {
+            index.put(i, i);
+            published.set(i + 1);
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(failed).isFalse();
+    }
+}
@@ -0,0 +1,52 @@
+package com.learning.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedUserFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Balances changed through a view are written in place and survive reopening the file, nothing has to be parsed
+     * to find a user again.
+     */
+    @Test
+    public void testGivenUsersInFile_WhenUpdateMoneyAndReopen_ThenRecordsAreReadInPlace() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("users.dat");
+        long farId = MappedUserFile.SEGMENT_RECORDS * 3L + 5;
+
+        try (MappedUserFile file = MappedUserFile.open(path)) {
+            file.put(1L, 100.0, 10000.00);
+            file.put(farId, 50.0, 20.0);
+
+            file.get(1L).setMoney(9000.00);
+        }
+
+        try (MappedUserFile file = MappedUserFile.open(path)) {
+            UserView user = file.get(1L);
+            assertThat(user.getId()).isEqualTo(1L);
+            assertThat(user.getCreditRating()).isEqualTo(100.0);
+            assertThat(user.getMoney()).isEqualTo(9000.00);
+            assertThat(file.get(farId).getMoney()).isEqualTo(20.0);
+            assertThat(file.get(2L)).isNull();
+            assertThat(file.get(farId * 2)).isNull();
+        }
+    }
+
+    @Test
+    public void testGivenForeignFile_WhenOpen_ThenFileIsRejected() throws IOException {
+        Path path = folder.newFile("foreign.dat").toPath();
+        Files.write(path, "definitely not a user file".getBytes());
+
+        assertThatThrownBy(() -> MappedUserFile.open(path)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,128 @@
+package com.learning.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UserSnapshotterTest {
+
+    private static final int USERS = 10_000;
+    private static final int PART_RECORDS = 1_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A snapshot is taken while a writer keeps changing balances. Loading the snapshot and replaying only the log
+     * written after it gives the same state as the store had, and the log segments the snapshot covers are gone.
+     */
+    @Test
+    public void testGivenSnapshotTakenUnderWrites_WhenLoadAndReplayLogTail_ThenStateIsRestoredExactly()
+            throws IOException, InterruptedException {
+        Path logDirectory = folder.newFolder("wal").toPath();
+        Path snapshotDirectory = folder.newFolder("snapshots").toPath();
+
+        try (UserWal wal = UserWal.open(logDirectory, 64 * 1024)) {
+            UserStore store = new UserStore(false, wal);
+            for (long id = 1; id <= USERS; ++id) {
+                store.add(id, 100.0, 0.0);
+            }
+
+            AtomicBoolean writing = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                for (int round = 1; writing.get(); ++round) {
+                    for (long id = 1; id <= USERS; id += 97) {
+                        store.get(id).setMoney(round);
+                    }
+                }
+            });
+            writer.start();
+            long lsn = new UserSnapshotter(store, wal, snapshotDirectory, executor, PART_RECORDS).snapshot().join();
+            writing.set(false);
+            writer.join();
+            store.get(USERS).setCreditRating(1.0);
+
+            assertThat(firstSegmentStart(logDirectory)).isGreaterThan(0).isLessThanOrEqualTo(lsn);
+            assertThat(wal.getCommittedLsn()).isGreaterThan(lsn);
+        }
+
+        try (UserWal wal = UserWal.open(logDirectory, 64 * 1024)) {
+            UserStore restored = new UserStore(false, wal);
+            long lsn = UserSnapshotter.load(snapshotDirectory, restored, executor);
+            restored.recover(lsn);
+
+            assertThat(restored.size()).isEqualTo(USERS);
+            assertThat(restored.get(USERS).getCreditRating()).isEqualTo(1.0);
+            double lastRound = restored.get(1L).getMoney();
+            assertThat(lastRound).isGreaterThan(0);
+            for (long id = 1; id <= USERS; ++id) {
+                assertThat(restored.get(id).getMoney()).isEqualTo((id - 1) % 97 == 0 ? lastRound : 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testGivenNoSnapshot_WhenLoad_ThenWholeLogHasToBeReplayed() throws IOException {
+        UserStore store = new UserStore();
+
+        assertThat(UserSnapshotter.load(folder.getRoot().toPath(), store, executor)).isZero();
+        assertThat(store.size()).isZero();
+    }
+
+    /**
+     * Scheduled snapshots into a path that is a file all fail; the failures are counted and the schedule goes on on the
+     * caller's scheduler, which the caller shuts down.
+     */
+    @Test
+    public void testGivenUnwritableDirectory_WhenScheduleSnapshots_ThenFailuresAreCounted()
+            throws IOException, InterruptedException {
+        Path logDirectory = folder.newFolder("wal").toPath();
+        Path notADirectory = folder.newFile("snapshots").toPath();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        try (UserWal wal = UserWal.open(logDirectory, 64 * 1024)) {
+            UserStore store = new UserStore(false, wal);
+            store.add(1L, 100.0, 0.0);
+            UserSnapshotter snapshotter = new UserSnapshotter(store, wal, notADirectory, executor, PART_RECORDS);
+
+            snapshotter.schedule(scheduler, 10, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (snapshotter.getFailureCount() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(snapshotter.getFailureCount()).isGreaterThanOrEqualTo(2);
+            assertThat(snapshotter.getLastFailure()).isInstanceOf(IOException.class);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static long firstSegmentStart(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .mapToLong(name -> Long.parseLong(name.substring(0, name.indexOf('.'))))
+                    .min()
+                    .getAsLong();
+        }
+    }
+}
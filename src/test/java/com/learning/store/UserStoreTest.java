@@ -0,0 +1,99 @@
+package com.learning.store;
+
+import com.learning.model.User;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UserStoreTest {
+
+    /**
+     * Views hold no state of their own, so a change made through one view is visible through every other view of the
+     * same user.
+     */
+    @Test
+    public void testGivenStoredUser_WhenChangeMoneyThroughView_ThenAnotherViewSeesTheChange() {
+        UserStore store = new UserStore();
+        store.add(1L, 100.0, 10000.00);
+
+        store.get(1L).setMoney(500.0);
+
+        UserView user = store.get(1L);
+        assertThat(user.getId()).isEqualTo(1L);
+        assertThat(user.getCreditRating()).isEqualTo(100.0);
+        assertThat(user.getMoney()).isEqualTo(500.0);
+    }
+
+    /**
+     * The store grows chunk by chunk, records written before the growth stay where they were.
+     */
+    @Test
+    public void testGivenOffHeapStore_WhenAddMoreUsersThanOneChunkHolds_ThenAllUsersAreReadable() {
+        UserStore store = new UserStore(true);
+        int count = UserStore.CHUNK_SIZE * 2 + 10;
+
+        for (int i = 0; i < count; ++i) {
+            store.add(i, i / 2.0, i * 10.0);
+        }
+
+        assertThat(store.size()).isEqualTo(count);
+        for (int i = 0; i < count; i += 997) {
+            UserView user = store.get(i);
+            assertThat(user.getCreditRating()).isEqualTo(i / 2.0);
+            assertThat(user.getMoney()).isEqualTo(i * 10.0);
+        }
+    }
+
+    @Test
+    public void testGivenStore_WhenGetUnknownOrAddDuplicateUser_ThenNothingIsReturnedAndDuplicateIsRejected() {
+        UserStore store = new UserStore();
+        store.add(7L, 1.0, 2.0);
+
+        assertThat(store.get(8L)).isNull();
+        assertThat(store.getOrAdd(7L, 5.0, 5.0).getMoney()).isEqualTo(2.0);
+        assertThatThrownBy(() -> store.add(7L, 1.0, 2.0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * A read returns a copy the caller owns: changing it leaves the stored user alone, and a later change of the
+     * record doesn't show through it. An unknown user reads as null.
+     */
+    @Test
+    public void testGivenStoredUser_WhenReadIt_ThenTheCopyIsIndependentOfTheRecord() {
+        UserStore store = new UserStore();
+        store.add(1L, 100.0, 10000.00);
+
+        User copy = store.read(1L);
+        copy.setMoney(1.0);
+        store.get(1L).setCreditRating(50.0);
+
+        assertThat(store.get(1L).getMoney()).isEqualTo(10000.00);
+        assertThat(copy.getCreditRating()).isEqualTo(100.0);
+        assertThat(store.read(2L)).isNull();
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    /**
+     * A scan reuses one view for all users instead of allocating a view per lookup; moving it to an unknown user
+     * leaves it where it was.
+     */
+    @Test
+    public void testGivenOneView_WhenMoveItAcrossUsers_ThenItReadsEachUsersRecord() {
+        UserStore store = new UserStore();
+        for (long id = 1; id <= 3; ++id) {
+            store.add(id, id, id * 100.0);
+        }
+        UserView view = store.get(1L);
+
+        double total = 0;
+        for (long id = 1; id <= 3; ++id) {
+            assertThat(view.moveTo(id)).isTrue();
+            total += view.getMoney();
+        }
+
+        assertThat(total).isEqualTo(600.0);
+        assertThat(view.moveTo(4L)).isFalse();
+        assertThat(view.getId()).isEqualTo(3L);
+    }
+}
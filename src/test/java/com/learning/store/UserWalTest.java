@@ -0,0 +1,122 @@
+package com.learning.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UserWalTest {
+
+    private static final int USERS = 100;
+    private static final int UPDATES_PER_USER = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Many threads change balances of their own users at the same time. Their entries are committed in shared batches
+     * and a store recovered from the log ends up with the last committed value of every user.
+     */
+    @Test
+    public void testGivenConcurrentUpdates_WhenRecoverFromLog_ThenStoreHasLastCommittedValues()
+            throws IOException, InterruptedException {
+        Path directory = folder.getRoot().toPath();
+
+        try (UserWal wal = UserWal.open(directory, 16 * 1024)) {
+            UserStore store = new UserStore(false, wal);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 1; i <= USERS; ++i) {
+                long id = i;
+                Thread thread = new Thread(() -> {
+                    store.add(id, 1.0, 0.0);
+                    for (int update = 1; update <= UPDATES_PER_USER; ++update) {
+                        store.get(id).setMoney(update * 10.0);
+                    }
+                    store.get(id).setCreditRating(id * 2.0);
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertThat(wal.getBatchSize().getSum()).isEqualTo(USERS * (UPDATES_PER_USER + 2L));
+            assertThat(wal.getCommitLatency().getCount()).isEqualTo(USERS * (UPDATES_PER_USER + 2L));
+        }
+
+        try (UserWal wal = UserWal.open(directory, 16 * 1024)) {
+            UserStore recovered = new UserStore(false, wal);
+            recovered.recover(0);
+
+            assertThat(recovered.size()).isEqualTo(USERS);
+            for (long id = 1; id <= USERS; ++id) {
+                assertThat(recovered.get(id).getMoney()).isEqualTo(UPDATES_PER_USER * 10.0);
+                assertThat(recovered.get(id).getCreditRating()).isEqualTo(id * 2.0);
+            }
+        }
+    }
+
+    /**
+     * A frame torn by a crash is cut off on open, appends continue right after the last complete frame.
+     */
+    @Test
+    public void testGivenTornTail_WhenReopenAndAppend_ThenTornFrameIsDroppedAndNewEntriesAreReplayed()
+            throws IOException {
+        Path directory = folder.getRoot().toPath();
+        long committed;
+        try (UserWal wal = UserWal.open(directory)) {
+            committed = wal.appendCreate(1L, 100.0, 10000.00).join();
+        }
+        Path segment = lastSegment(directory);
+        Files.write(segment, new byte[] {42, 0, 0, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (UserWal wal = UserWal.open(directory)) {
+            assertThat(wal.getCommittedLsn()).isEqualTo(committed);
+            CompletableFuture<Long> money = wal.appendMoney(1L, 500.0);
+            money.join();
+
+            UserStore store = new UserStore(false, wal);
+            assertThat(store.recover(0)).isEqualTo(money.join());
+            assertThat(store.get(1L).getMoney()).isEqualTo(500.0);
+        }
+    }
+
+    /**
+     * A change whose log entry can't be committed, here because the log is closed, fails the call and leaves the
+     * record with its old value, so nothing that isn't in the log is visible or ends up in a snapshot.
+     */
+    @Test
+    public void testGivenLogThatFailsCommits_WhenChangeUser_ThenCallFailsAndOldValueStays() throws IOException {
+        UserWal wal = UserWal.open(folder.getRoot().toPath());
+        UserStore store = new UserStore(false, wal);
+        store.add(1L, 100.0, 10000.00);
+        wal.close();
+
+        assertThatThrownBy(() -> store.get(1L).setMoney(500.0)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> store.get(1L).setCreditRating(1.0)).hasCauseInstanceOf(IllegalStateException.class);
+
+        assertThat(store.get(1L).getMoney()).isEqualTo(10000.00);
+        assertThat(store.get(1L).getCreditRating()).isEqualTo(100.0);
+        assertThat(store.awaitWrites()).isEqualTo(2);
+    }
+
+    private static Path lastSegment(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.sorted().collect(Collectors.toList());
+
+            return segments.get(segments.size() - 1);
+        }
+    }
+}
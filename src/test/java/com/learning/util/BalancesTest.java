@@ -0,0 +1,61 @@
+package com.learning.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BalancesTest {
+
+    @Test
+    public void testGivenRandomBalances_WhenAggregate_ThenResultsMatchStreams() {
+        long[] balances = ThreadLocalRandom.current().longs(100_003, -1L << 40, 1L << 40).toArray();
+
+        assertThat(Balances.sum(balances)).isEqualTo(Arrays.stream(balances).sum());
+        assertThat(Balances.sum(balances, 10, 20)).isEqualTo(Arrays.stream(balances, 10, 20).sum());
+        assertThat(Balances.min(balances)).isEqualTo(Arrays.stream(balances).min().getAsLong());
+        assertThat(Balances.max(balances)).isEqualTo(Arrays.stream(balances).max().getAsLong());
+    }
+
+    /**
+     * A wrapping long sum would silently return a negative total here.
+     */
+    @Test
+    public void testGivenTotalBeyondLongRange_WhenSum_ThenArithmeticExceptionIsThrown() {
+        long[] balances = {Long.MAX_VALUE, 1};
+
+        assertThatThrownBy(() -> Balances.sum(balances)).isInstanceOf(ArithmeticException.class);
+        assertThat(Balances.sum(new long[] {Long.MAX_VALUE, -1, Long.MIN_VALUE + 1})).isEqualTo(-1L);
+    }
+
+    /**
+     * The total is close to the lower limit and its high part alone is out of range until the carry of the low parts
+     * is added to it.
+     */
+    @Test
+    public void testGivenTotalNearLongRangeWithCarryFromLowParts_WhenSum_ThenExactTotalIsReturned() {
+        long[] balances = {-(1L << 62) - 1, -(1L << 62) - 1, (1L << 32) - 1};
+
+        assertThat(Balances.sum(balances)).isEqualTo(-9223372032559808515L);
+    }
+
+    @Test
+    public void testGivenBalances_WhenBuildHistogram_ThenOutliersAreClampedToEdgeBuckets() {
+        long[] balances = {-500, 0, 99, 100, 250, 299, 10_000};
+
+        assertThat(Balances.histogram(balances, 0, 100, 3)).containsExactly(3, 1, 3);
+    }
+
+    /**
+     * Balances so far from the origin that their difference to it overflows a long still land in the edge buckets.
+     */
+    @Test
+    public void testGivenBalancesFarFromOrigin_WhenBuildHistogram_ThenDifferenceDoesNotOverflow() {
+        long[] balances = {Long.MIN_VALUE, -1, 0, 99, Long.MAX_VALUE};
+
+        assertThat(Balances.histogram(balances, 1, 100, 3)).containsExactly(4, 0, 1);
+        assertThat(Balances.histogram(balances, -100, 100, 3)).containsExactly(2, 2, 1);
+    }
+}
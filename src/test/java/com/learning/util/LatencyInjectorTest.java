@@ -0,0 +1,82 @@
+package com.learning.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyInjectorTest {
+
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    public void testGivenSameSeed_WhenDecisionsAreDrawn_ThenSequencesAreEqual() {
+        LatencyDistribution distribution = LatencyDistribution.logNormal(2, 50, TimeUnit.MILLISECONDS);
+        LatencyInjector first = new LatencyInjector(distribution, 0.1, 42);
+        LatencyInjector second = new LatencyInjector(distribution, 0.1, 42);
+
+        for (int i = 0; i < 1000; ++i) {
+            LatencyInjector.Decision expected = first.next();
+            LatencyInjector.Decision actual = second.next();
+            assertThat(actual.getLatencyNanos()).isEqualTo(expected.getLatencyNanos());
+            assertThat(actual.isFailed()).isEqualTo(expected.isFailed());
+        }
+    }
+
+    @Test
+    public void testGivenErrorRate_WhenManyDecisionsAreDrawn_ThenFailureShareMatchesIt() {
+        LatencyInjector injector = new LatencyInjector(
+                LatencyDistribution.uniform(100, 200, TimeUnit.MICROSECONDS), 0.05, 7);
+
+        long failures = 0;
+        for (int i = 0; i < SAMPLES; ++i) {
+            LatencyInjector.Decision decision = injector.next();
+            assertThat(decision.getLatencyNanos()).isBetween(100_000L, 200_000L);
+            if (decision.isFailed()) {
+                ++failures;
+            }
+        }
+
+        assertThat((double) failures / SAMPLES).isCloseTo(0.05, offset(0.005));
+    }
+
+    /**
+     * Each distribution has its characteristic tail: the exponential p99 is about 4.6 times its mean, the log-normal
+     * hits its configured median and p99, and rare stalls of a bimodal distribution show up only above p99.
+     */
+    @Test
+    public void testGivenDistributions_WhenSampled_ThenPercentilesMatchTheirShape() {
+        long[] exponential = sample(LatencyDistribution.exponential(1, TimeUnit.MILLISECONDS));
+        assertThat(Arrays.stream(exponential).average().getAsDouble()).isCloseTo(1e6, offset(2e4));
+        assertThat(percentile(exponential, 99)).isCloseTo(4_605_170L, within(200_000L));
+
+        long[] logNormal = sample(LatencyDistribution.logNormal(500, 20_000, TimeUnit.MICROSECONDS));
+        assertThat(percentile(logNormal, 50)).isCloseTo(500_000L, within(20_000L));
+        assertThat(percentile(logNormal, 99)).isCloseTo(20_000_000L, within(2_000_000L));
+
+        long[] bimodal = sample(LatencyDistribution.bimodal(
+                LatencyDistribution.constant(1, TimeUnit.MILLISECONDS),
+                LatencyDistribution.constant(1, TimeUnit.SECONDS), 0.005));
+        assertThat(percentile(bimodal, 99)).isEqualTo(1_000_000L);
+        assertThat(percentile(bimodal, 99.9)).isEqualTo(1_000_000_000L);
+    }
+
+    private static long[] sample(LatencyDistribution distribution) {
+        Random random = new Random(1);
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; ++i) {
+            samples[i] = distribution.sampleNanos(random);
+        }
+        Arrays.sort(samples);
+
+        return samples;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.ceil(percentile / 100 * sorted.length) - 1];
+    }
+}
@@ -0,0 +1,56 @@
+package com.learning.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.rules.ExternalResource;
+
+/**
+ * Runs every test of a class against a fresh {@link VirtualTimeSource}, so simulated jobs and delays made through
+ * {@link ThreadUtils} take no real time. The test thread is a participant of the source: the clock moves while the
+ * test waits through {@link #join}, and stands still while the test runs. The previous time source is restored after
+ * each test.
+ */
+public class VirtualTimeRule extends ExternalResource {
+
+    private TimeSource previous;
+    private VirtualTimeSource timeSource;
+    private ExecutorService threads;
+
+    @Override
+    protected void before() {
+        previous = ThreadUtils.getTimeSource();
+        timeSource = new VirtualTimeSource();
+        timeSource.register();
+        threads = Executors.newCachedThreadPool();
+        ThreadUtils.setTimeSource(timeSource);
+    }
+
+    @Override
+    protected void after() {
+        ThreadUtils.setTimeSource(previous);
+        timeSource.unregister();
+        timeSource.close();
+        threads.shutdownNow();
+    }
+
+    public VirtualTimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * @return an executor with a thread for every task, whose tasks are participants of the source, so their sleeps end
+     * in the order of their deadlines
+     */
+    public Executor getExecutor() {
+        return timeSource.track(threads);
+    }
+
+    /**
+     * Waits for the future, letting the clock move meanwhile.
+     */
+    public <T> T join(CompletableFuture<T> future) {
+        return timeSource.join(future);
+    }
+}
@@ -0,0 +1,118 @@
+package com.learning.util;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualTimeSourceTest {
+
+    /**
+     * Tracked tasks sleeping a simulated minute in total finish in the order of their sleeps, and it takes
+     * milliseconds of real time. The clock can't move before every task sleeps, however late its thread starts.
+     */
+    @Test
+    public void testGivenSleepingTrackedTasks_WhenTestJoinsThem_ThenTheyWakeInOrderWithoutRealWait() {
+        ExecutorService threads = Executors.newFixedThreadPool(3);
+        try (VirtualTimeSource time = new VirtualTimeSource()) {
+            time.register();
+            Executor executor = time.track(threads);
+            List<Integer> woken = new CopyOnWriteArrayList<>();
+            long start = System.nanoTime();
+
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[3];
+            int[] seconds = {30, 10, 20};
+            for (int i = 0; i < tasks.length; ++i) {
+                int duration = seconds[i];
+                tasks[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        time.sleep(duration, TimeUnit.SECONDS);
+                        woken.add(duration);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, executor);
+            }
+            time.join(CompletableFuture.allOf(tasks));
+
+            assertThat(woken).containsExactly(10, 20, 30);
+            assertThat(time.nanoTime()).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+            time.unregister();
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * A participant that doesn't wait on the source holds the clock: its delay stays pending until it joins the delay
+     * through the source.
+     */
+    @Test
+    public void testGivenRunningParticipant_WhenItJoinsDelay_ThenClockMovesOnlyThen() {
+        try (VirtualTimeSource time = new VirtualTimeSource()) {
+            time.register();
+
+            CompletableFuture<Void> delay = time.delay(1, TimeUnit.SECONDS);
+            Thread.yield();
+            assertThat(delay).isNotDone();
+            assertThat(time.nanoTime()).isZero();
+
+            time.join(delay);
+            assertThat(time.nanoTime()).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+            time.unregister();
+        }
+    }
+
+    /**
+     * A cancelled delay is dropped instead of pulling the clock to its deadline, so the next delay completes at its
+     * own deadline while the clock is advanced by hand.
+     */
+    @Test
+    public void testGivenCancelledDelay_WhenClockIsAdvanced_ThenOtherDelayCompletesAtItsDeadline()
+            throws InterruptedException {
+        try (VirtualTimeSource time = new VirtualTimeSource()) {
+            CompletableFuture<Void> cancelled = time.delay(1, TimeUnit.HOURS);
+            cancelled.cancel(false);
+
+            CompletableFuture<Long> completedAt = time.delay(250, TimeUnit.MICROSECONDS)
+                    .thenApply(ignored -> time.nanoTime());
+            time.advance(1, TimeUnit.MILLISECONDS);
+
+            assertThat(completedAt.join()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(250));
+            assertThat(time.nanoTime()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+            assertThat(time.getPendingCount()).isZero();
+        }
+    }
+
+    /**
+     * Without participants the clock doesn't move on its own, closing the source releases the sleep.
+     */
+    @Test
+    public void testGivenPendingSleep_WhenSourceIsClosed_ThenSleepIsReleased() throws InterruptedException {
+        VirtualTimeSource time = new VirtualTimeSource();
+        Thread sleeper = new Thread(() -> {
+            try {
+                time.sleep(1, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sleeper.start();
+        while (time.getPendingCount() == 0) {
+            Thread.yield();
+        }
+
+        time.close();
+        sleeper.join(TimeUnit.SECONDS.toMillis(1));
+
+        assertThat(sleeper.isAlive()).isFalse();
+        assertThat(time.nanoTime()).isZero();
+    }
+}